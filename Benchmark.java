@@ -0,0 +1,157 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Micro benchmarks for the evaluator, deck and simulation hot paths.
+ *
+ * Every benchmark is warmed up, then run for a fixed time on the calling
+ * thread and reported as operations per second and bytes allocated per
+ * operation (read from the thread allocation counter, where the JVM has
+ * one).  Inputs are generated up front from a fixed seed, so runs compare.
+ *
+ * usage: java Benchmark [seconds per benchmark] [name filter]
+ */
+public class Benchmark {
+
+	/** one benchmarked operation, i picks the input */
+	interface Op {
+		int run(int i);
+	}
+
+	private static final int NUM_INPUTS = 4096;
+
+	private static double seconds = 2.0;
+	private static String filter = null;
+	private static int sink;
+
+	public static final void main(String[] args) {
+		if (args.length > 0) seconds = Double.parseDouble(args[0]);
+		if (args.length > 1) filter = args[1];
+
+		Random r = new Random(42);
+		final int[][] hands7 = new int[NUM_INPUTS][];
+		final Hand[] hands = new Hand[NUM_INPUTS];
+		final Hand[] others = new Hand[NUM_INPUTS];
+		final Hand[][] boards = new Hand[6][NUM_INPUTS];
+		final Card[][] cards = new Card[NUM_INPUTS][];
+		for (int i=0; i<NUM_INPUTS; i++) {
+			int[] c = deal(r, 9);
+			hands7[i] = new int[] {7, c[0], c[1], c[2], c[3], c[4], c[5], c[6]};
+			hands[i] = new Hand();
+			others[i] = new Hand();
+			cards[i] = new Card[9];
+			for (int j=0; j<9; j++) cards[i][j] = new Card(c[j]);
+			for (int j=0; j<7; j++) hands[i].addCard(c[j]);
+			for (int j=2; j<9; j++) others[i].addCard(c[j]);
+			for (int n=3; n<=5; n++) {
+				boards[n][i] = new Hand();
+				for (int j=2; j<2+n; j++) boards[n][i].addCard(c[j]);
+			}
+		}
+
+		final HandEvaluator he = new HandEvaluator();
+		final int[] best = new int[6];
+		final Deck deck = new Deck(42);
+		final IntDeck intDeck = new IntDeck(new Random(42));
+		final Table table = new Table(3);
+		table.r = new Random(42);
+
+		System.out.println("benchmark\tops/s\tbytes/op");
+		bench("rankHand_Java", new Op() { public int run(int i) { return HandEvaluator.rankHand_Java(hands7[i]); }});
+		bench("HandRankTable.rankHand", new Op() { public int run(int i) { return HandRankTable.rankHand(hands7[i]); }});
+		bench("HandRankTable.rankMask", new Op() { public int run(int i) { return HandRankTable.rankMask(hands[i].getCardMask()); }});
+		bench("Find_Hand", new Op() { public int run(int i) { return he.Find_Hand(hands7[i], best); }});
+		bench("compareHands", new Op() { public int run(int i) { return he.compareHands(hands[i], others[i]); }});
+		bench("getRanks flop", new Op() { public int run(int i) { return he.getRanks(boards[3][i])[0][1]; }});
+		bench("getRanks river", new Op() { public int run(int i) { return he.getRanks(boards[5][i])[0][1]; }});
+		bench("handRank flop", new Op() { public int run(int i) { return (int)(1000*he.handRank(cards[i][0], cards[i][1], boards[3][i])); }});
+		bench("handRank river", new Op() { public int run(int i) { return (int)(1000*he.handRank(cards[i][0], cards[i][1], boards[5][i])); }});
+		bench("Deck.shuffle", new Op() { public int run(int i) { deck.reset(); deck.shuffle(); return deck.deal().getIndex(); }});
+		bench("Deck.extractCard x7", new Op() { public int run(int i) {
+			deck.reset();
+			for (int j=0; j<7; j++) deck.extractCard(cards[i][j]);
+			return deck.getTopCardIndex();
+		}});
+		bench("IntDeck deal x7", new Op() { public int run(int i) {
+			intDeck.reset();
+			int s = 0;
+			for (int j=0; j<7; j++) s += intDeck.deal();
+			return s;
+		}});
+		final int trials = 100;
+		bench("Table.simulate preflop x100", new Op() { public int run(int i) {
+			Card[] c = cards[i];
+			return (int)(1000*table.simulate(trials, c[0], c[1]));
+		}});
+		bench("Table.simulate flop x100", new Op() { public int run(int i) {
+			Card[] c = cards[i];
+			return (int)(1000*table.simulate(trials, c[0], c[1], c[2], c[3], c[4]));
+		}});
+		bench("Table.simulate turn x100", new Op() { public int run(int i) {
+			Card[] c = cards[i];
+			return (int)(1000*table.simulate(trials, c[0], c[1], c[2], c[3], c[4], c[5]));
+		}});
+		bench("Table.simulate river x100", new Op() { public int run(int i) {
+			Card[] c = cards[i];
+			return (int)(1000*table.simulate(trials, c[0], c[1], c[2], c[3], c[4], c[5], c[6]));
+		}});
+		System.out.println("(sink " + sink + ")");
+	}
+
+	/**
+	 * Warm up, then time op for the configured number of seconds and print the results.
+	 */
+	static void bench(String name, Op op) {
+		if (filter != null && name.indexOf(filter) < 0) return;
+		long warmup = (long)(seconds*1.0e9/4);
+		run(op, warmup);
+
+		long bytes0 = allocatedBytes();
+		long start = System.nanoTime();
+		long ops = run(op, (long)(seconds*1.0e9));
+		long nanos = System.nanoTime() - start;
+		long bytes = allocatedBytes() - bytes0;
+
+		String alloc = (bytes0 < 0) ? "n/a" : "" + Math.round((double)bytes/ops);
+		System.out.println(name + "\t" + Math.round(ops*1.0e9/nanos) + "\t" + alloc);
+	}
+
+	// run op over the inputs for about nanos ns, return the number of calls
+	private static long run(Op op, long nanos) {
+		long end = System.nanoTime() + nanos;
+		long ops = 0;
+		int s = 0;
+		do {
+			for (int i=0; i<NUM_INPUTS; i++) s += op.run(i);
+			ops += NUM_INPUTS;
+		} while (System.nanoTime() < end);
+		sink += s;
+		return ops;
+	}
+
+	// bytes allocated by this thread so far, -1 if the JVM can't tell
+	private static long allocatedBytes() {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if (mx instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean smx = (com.sun.management.ThreadMXBean)mx;
+			if (smx.isThreadAllocatedMemorySupported())
+				return smx.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	// n different card indexes
+	private static int[] deal(Random r, int n) {
+		int[] c = new int[n];
+		long used = 0;
+		for (int i=0; i<n; ) {
+			int x = r.nextInt(Card.NUM_CARDS);
+			if ((used & (1L << x)) == 0) {
+				used |= 1L << x;
+				c[i++] = x;
+			}
+		}
+		return c;
+	}
+}
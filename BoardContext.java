@@ -0,0 +1,85 @@
+/**
+ * The public cards of the hand being played at one table, worked out once
+ * per street for every player there.
+ *
+ * Casino clears it before a hand and adds the board cards as they are
+ * dealt; each Player at the table holds on to it, and its Table takes the
+ * dead card mask and the hash key fragment of the board from here instead
+ * of adding them up again for every simulation.  Once the river is out it
+ * also holds the rank of the board with every holding
+ * (HandRankTable.rankHoldings()), so the river needs no simulation.  The
+ * rank table is allocated once and filled again every hand.
+ *
+ * Only read while its table plays a hand, by the thread playing it.
+ */
+public class BoardContext {
+
+	public static final int BOARD_SIZE = 5;
+
+	// board card indexes, as Hand.getCardArray() has them: cards[0] is the count
+	private final int[] cards = new int[BOARD_SIZE + 1];
+	private long mask;
+	private long key;
+	private final int[][] ranks = new int[Card.NUM_CARDS][Card.NUM_CARDS];
+	private boolean ranked;
+
+	public BoardContext() {
+		clear();
+	}
+
+	/**
+	 * Empty the board for a new hand.
+	 */
+	public void clear() {
+		cards[0] = 0;
+		mask = 0;
+		key = HandRankTable.key(0);
+		ranked = false;
+	}
+
+	public void setFlop(Card c1, Card c2, Card c3) {
+		add(c1);
+		add(c2);
+		add(c3);
+	}
+
+	/**
+	 * Add the next board card; with the fifth the rank table is filled.
+	 */
+	public void add(Card c) {
+		int i = c.getIndex();
+		cards[++cards[0]] = i;
+		mask |= CardMask.of(i);
+		key += HandRankTable.cardKey(i);
+		if (cards[0] == BOARD_SIZE) {
+			HandRankTable.rankHoldings(cards, ranks);
+			ranked = true;
+		}
+	}
+
+	/**
+	 * Number of board cards out, 0, 3, 4 or 5.
+	 */
+	public int size() { return cards[0]; }
+
+	/**
+	 * Index of board card i, 0 is the first flop card.
+	 */
+	public int getCard(int i) { return cards[i+1]; }
+
+	/**
+	 * The board cards, see CardMask.
+	 */
+	public long getMask() { return mask; }
+
+	/**
+	 * The board's hash key, see HandRankTable.key().
+	 */
+	public long getKey() { return key; }
+
+	/**
+	 * ranks[a][b] is the rank of the board with holding a, b, null before the river.
+	 * The table must not be changed.
+	 */
+	public int[][] getRanks() { return ranked ? ranks : null; }
+}
@@ -0,0 +1,114 @@
+/**
+ * A set of cards packed into a long, one bit per card index {0..51}.
+ *
+ * Since a card index is 13*suit + rank, the bits of each suit form one 13
+ * bit block: bits 0-12 are the clubs Two..Ace, 13-25 diamonds, 26-38 hearts
+ * and 39-51 spades.  Adding, removing and testing a card are single bit
+ * operations, the union of two sets (a pocket and a board) is a single OR,
+ * and a mask makes a cheap hash key for caches.
+ *
+ * All methods are static, masks are plain longs.
+ */
+public class CardMask {
+
+	/** every card in the deck */
+	public static final long FULL = (1L << Card.NUM_CARDS) - 1;
+
+	/** the 13 bits of one suit */
+	public static final int SUIT_BITS = (1 << Card.NUM_RANKS) - 1;
+
+	private CardMask() { }
+
+	/**
+	 * Mask holding a single card.
+	 * @param c card index {0..51}
+	 */
+	public static long of(int c) {
+		return 1L << c;
+	}
+
+	public static long of(Card c) {
+		return 1L << c.getIndex();
+	}
+
+	/**
+	 * Mask holding the given cards.
+	 */
+	public static long of(Card... cards) {
+		long mask = 0;
+		for (int i=0; i<cards.length; i++) mask |= 1L << cards[i].getIndex();
+		return mask;
+	}
+
+	/**
+	 * Mask holding the cards of a hand.
+	 */
+	public static long of(Hand h) {
+		return h.getCardMask();
+	}
+
+	public static long add(long mask, int c) {
+		return mask | (1L << c);
+	}
+
+	public static long remove(long mask, int c) {
+		return mask & ~(1L << c);
+	}
+
+	public static boolean contains(long mask, int c) {
+		return (mask & (1L << c)) != 0;
+	}
+
+	/**
+	 * Number of cards in the set.
+	 */
+	public static int size(long mask) {
+		return Long.bitCount(mask);
+	}
+
+	/**
+	 * Ranks held in one suit, bit r set for rank r (Card.TWO..Card.ACE).
+	 */
+	public static int suitRanks(long mask, int suit) {
+		return (int)(mask >>> (Card.NUM_RANKS*suit)) & SUIT_BITS;
+	}
+
+	/**
+	 * Ranks held in any suit, bit r set for rank r.
+	 */
+	public static int ranks(long mask) {
+		return suitRanks(mask,Card.CLUBS) | suitRanks(mask,Card.DIAMONDS)
+				| suitRanks(mask,Card.HEARTS) | suitRanks(mask,Card.SPADES);
+	}
+
+	/**
+	 * All cards of one rank in the set, as a mask.
+	 */
+	public static long rankCards(long mask, int rank) {
+		long all = 1L | (1L << Card.NUM_RANKS) | (1L << 2*Card.NUM_RANKS) | (1L << 3*Card.NUM_RANKS);
+		return mask & (all << rank);
+	}
+
+	/**
+	 * Lowest card index in the set, or Card.BAD_CARD if it is empty.
+	 */
+	public static int first(long mask) {
+		return (mask == 0) ? Card.BAD_CARD : Long.numberOfTrailingZeros(mask);
+	}
+
+	/**
+	 * Build a Hand out of the cards in the set, lowest index first.
+	 */
+	public static Hand toHand(long mask) {
+		Hand h = new Hand();
+		while (mask != 0) {
+			h.addCard(Long.numberOfTrailingZeros(mask));
+			mask &= mask - 1;
+		}
+		return h;
+	}
+
+	public static String toString(long mask) {
+		return toHand(mask).toString();
+	}
+}
@@ -1,36 +1,125 @@
-import java.util.Random;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 
 
 /**
 *    Lets play some bots against each other in simplified play
+*
+*    Every round numTables tables with disjoint sets of players play one
+*    hand each, on up to numThreads threads.  Bankrolls are only settled
+*    once all tables of a round are done, table by table; every player is
+*    settled on his own, so the order makes no difference, and a seeded
+*    casino gives the same results for any number of threads.
 */
 public class Casino {
 	public Random r;
 	public HandEvaluator handEval;
-	private Deck theDeck;
+	private IntDeck theDeck;
 	public int numPlayers = 20;
 	public int numRounds = 1000;
 	public int numIterations = 1;
 	public int annie = 50;
 	public Player[] pool;
 	//public Player[] table;
+	/**
+	* Standings are written to this file after every iteration and at the
+	* end of run(), null for none.  Only its name is used, the standings go
+	* through a ResultsWriter.
+	*/
 	public file logFile;
 	public boolean debug = true;
-	Bet bet = null;
+
+	/**
+	* Print the round number every 1% of the rounds
+	*/
+	public boolean progress = true;
+
+	/**
+	* Tables played at the same time every round, and threads to play them on
+	*/
+	public int numTables = 1;
+	public int numThreads = 1;
+	private SeatAllocator seats;
+
+	// per table deck, evaluator, board and random numbers for the deck
+	private IntDeck[] decks;
+	private HandEvaluator[] evals;
+	private BoardContext[] boards;
+	private Random[] deckRandom;
+
+	/**
+	* Hands are written here if it is set, see recordHistory()
+	*/
+	public HandHistory history;
+	private HandRecord[] records;
+	private long numHands = 0;
+
+	/**
+	* Flop simulation results shared by all players in the pool
+	*/
+	public EquityCache equityCache = new EquityCache();
+
+	/** checkpoint file format, see checkpoint() */
+	public static final int CHECKPOINT_MAGIC = 0x4b50434b;   // "KPCK"
+	public static final int CHECKPOINT_VERSION = 1;
+
+	private String checkpointFile;
+	private int checkpointRounds;
+	private ExecutorService checkpointWriter;
+
+	// where run() starts, set by resume()
+	private int startIteration = 0;
+	private int startRound = 0;
 
 	public Casino() {
+		r=new Random();
+		init();
+		run();
+	}
+
+	/**
+	* Set up a seeded casino, run() plays it.  For the same seed, pool size
+	* and number of tables the results do not depend on numThreads.
+	* No equity cache is used, since which table fills an entry first
+	* would change the results.
+	*/
+	public Casino(long seed, int numPlayers, int numTables, int numThreads) {
+		r = new Random(seed);
+		this.numPlayers = numPlayers;
+		this.numTables = numTables;
+		this.numThreads = numThreads;
+		debug = false;
+		equityCache = null;
+		init();
+		for (int i=0; i<numPlayers; i++) pool[i].setSeed(r.nextLong());
+	}
 
-		handEval = new HandEvaluator();
+	private void init() {
 		logFile = new file("casino_log_1.txt");
-		r=new Random();
 
 		// first create some potential players
 		pool = new Player[numPlayers];
 		for (int i=0; i<numPlayers; i++) {
 			pool[i] = new Player(i);
 			pool[i].debug=debug;
+			pool[i].setEquityCache(equityCache);
 			//pool[i].params.ranSet2(0.12f,8.0f,4.0f);
 			if (i%5==0) pool[i].params.setConst(0.5f);
 			if (i%5==1) pool[i].params.setConst(1);
@@ -41,98 +130,325 @@ public class Casino {
 			pool[i].amountBought+=10000;
 			pool[i].broke=false;
 		}
+		seats = new SeatAllocator(pool, r);
+
+		// get the decks in order
+		decks = new IntDeck[numTables];
+		evals = new HandEvaluator[numTables];
+		boards = new BoardContext[numTables];
+		deckRandom = new Random[numTables];
+		records = new HandRecord[numTables];
+		for (int t=0; t<numTables; t++) {
+			deckRandom[t] = new Random();
+			decks[t] = new IntDeck(deckRandom[t]);
+			evals[t] = new HandEvaluator();
+			boards[t] = new BoardContext();
+			records[t] = new HandRecord();
+		}
+		theDeck = decks[0];
+		handEval = evals[0];
+	}
 
+	/**
+	* Play numIterations times numRounds rounds and log the results.
+	*/
+	public void run() {
 		// keep track of our progress
-		int delta = (int)(numRounds/100);
-
-		// get the deck in order
-		theDeck = new Deck();
-		theDeck.shuffle();
-		theDeck.shuffle();
-
-		// we are going to have several tounaments, one at a time
-		for (int m=0; m<numIterations; m++) {
-
-			// play some rounds of games - OK le's play some cards
-			for (int i=0; i<numRounds; i++) {
-				if (i%delta==0) o("round: " + i);
-
-				// here are the players for this hand
-				int tableSize = 2+r.nextInt(8); // random table size 2 to 10
-				Player[] players = new Player[tableSize];
-				for (int j=0; j<tableSize; j++) {
-					boolean foundPlayer = false;
-					while (!foundPlayer) {
-						//if (debug) o("getting players..");
-						int rpn = r.nextInt(pool.length);
-						if (pool[rpn].isActive == false && !pool[rpn].broke) {
-							players[j]=pool[rpn];
-							pool[rpn].isActive = true;
-							foundPlayer=true;
+		int delta = Math.max(1, numRounds/100);
+		CasinoMetrics.register();
+		CasinoMetrics.watch(pool);
+
+		ExecutorService exec = (numThreads > 1) ? Executors.newFixedThreadPool(numThreads) : null;
+		try {
+			// we are going to have several tounaments, one at a time
+			for (int m=startIteration; m<numIterations; m++) {
+
+				// play some rounds of games - OK le's play some cards
+				for (int i=(m == startIteration) ? startRound : 0; i<numRounds; i++) {
+					if (progress && i%delta==0) o("round: " + i + "  " + CasinoMetrics.get());
+
+					// here are the players for this round, nice hands
+					Player[][] tables = seatTables();
+					playTables(tables, exec);
+					if (history != null) writeHistory(tables);
+
+					// lets take care of their banking needs, only the players seated have played
+					// then reset the players for later action
+					for (int t=0; t<tables.length; t++) {
+						if (tables[t] == null) continue;
+						for (int j=0; j<tables[t].length; j++) {
+							Player p = tables[t][j];
+							int winnings = p.bankroll-10000;
+							p.winnings+=winnings;
+							p.bankroll=10000;
+							p.broke = false;
+						}
+						seats.release(tables[t]);
+						for (int j=0; j<tables[t].length; j++) {
+							tables[t][j].reset();
 						}
 					}
-				}
 
-				playHand(players);
-				// nice hand
+					if (Log.isDebug(debug)) {
+						for (int j=0; j<pool.length; j++) {
+							Log.debug(pool[j].playerNumber+" : " + pool[j].winnings);
+						}
+					}
 
-				// lets take care of their banking needs
-				for (int j=0; j<pool.length; j++) {
-					int winnings = pool[j].bankroll-10000;
-					pool[j].winnings+=winnings;
-					pool[j].bankroll=10000;
-					pool[j].broke = false;
-					pool[j].isActive = false;
+					if (checkpointFile != null && (i+1) % checkpointRounds == 0) saveCheckpoint(m, i+1);
 				}
 
-				// reset the players for later action
-				for (int j=0; j<players.length; j++) {
-					players[j].reset();
-				}
+				// the pool is not bred between iterations, Evolution evolves parameters over whole casinos
+
+				Arrays.sort(pool);
+				writeLog();
 
-				if (debug) {
-					for (int j=0; j<pool.length; j++) {
-						System.out.println(pool[j].playerNumber+" : " + pool[j].winnings);
-					}
-				}
 			}
+		} finally {
+			if (exec != null) exec.shutdown();
+			closeHistory();
+			finishCheckpoints();
+		}
 
-			// w/ each iteration we ditch many of our homeboys
-			/*Arrays.sort(pool);
-			for (int i=0; i<pool.length/2; i++) {
-				pool[i] = new Player(i);
-				pool[i].debug=true;
-				//pool[i].params.ranSet2(0.12f,8.0f,4.0f);
-				if (i%4==0) pool[i].params.setConst(0.5f);
-				if (i%4==1) pool[i].params.setConst(1);
-				if (i%4==2) pool[i].params.setConst(2);
-				if (i%4==3) pool[i].params.setConst(4);
-				pool[i].setBankroll(10000);
-				pool[i].amountBought+=10000;
-				pool[i].broke=false;
+		// report results
+		Arrays.sort(pool);
+		writeLog();
+		if (equityCache != null) o(equityCache.toString());
+	}
+
+	/**
+	* Record every hand run() plays to a compressed hand history file,
+	* read it back with HandHistoryReader.
+	*/
+	public void recordHistory(String fileName) throws IOException {
+		recordHistory(fileName, false);
+	}
+
+	/**
+	* Record every hand run() plays to a hand history file.
+	* @param fixedWidth write fixed width records for MappedHistoryReader
+	*                   instead of the compressed HandHistoryReader format
+	*/
+	public void recordHistory(String fileName, boolean fixedWidth) throws IOException {
+		if (fixedWidth) history = new FixedHistoryWriter(fileName);
+		else history = new HandHistoryWriter(fileName);
+	}
+
+	// add the hands of a round in table order, so the file does not depend on the threads
+	private void writeHistory(Player[][] tables) {
+		try {
+			for (int t=0; t<tables.length; t++)
+				if (tables[t] != null) history.add(records[t]);
+		} catch (IOException e) {
+			Log.error("Cas: Error writing hand history, no longer recording - " + e.toString());
+			closeHistory();
+		}
+	}
+
+	private void closeHistory() {
+		if (history == null) return;
+		try {
+			history.close();
+		} catch (IOException e) {
+			Log.error("Cas: Error closing hand history - " + e.toString());
+		}
+		history = null;
+	}
+
+	/**
+	* Save the state of the casino every so many rounds while run() plays,
+	* so resume() can carry on from there if the run dies.  Only the latest
+	* checkpoint is kept.  The state is copied between rounds, which takes
+	* little time; the file is written on a background thread, to a
+	* temporary file first and then moved over the old checkpoint.
+	*
+	* File layout (big endian):
+	*   int MAGIC, int VERSION
+	*   int numPlayers, numTables, numRounds, numIterations, annie
+	*   int iteration, int round (the next round to play), long numHands
+	*   random state of the casino, byte card order of each table deck
+	*   int numEligible, int playerNumber[numPlayers] in seating order
+	*   per player, in pool order: Player.writeState()
+	*/
+	public void checkpoint(String fileName, int everyRounds) {
+		checkpointFile = fileName;
+		checkpointRounds = Math.max(1, everyRounds);
+	}
+
+	/**
+	* Set up a casino from a checkpoint, run() then plays the rest of the run.
+	* A seeded casino (see Casino(long, int, int, int)) resumed this way ends
+	* exactly as it would have without stopping, for any numThreads.  The
+	* casino comes back without an equity cache, hand history or checkpoints;
+	* set those up again before run() if wanted.
+	*/
+	public static Casino resume(String fileName, int numThreads) throws IOException {
+		DataInputStream in = new DataInputStream(Files.newInputStream(Paths.get(fileName)));
+		try {
+			if (in.readInt() != CHECKPOINT_MAGIC) throw new IOException(fileName + " is not a casino checkpoint");
+			int version = in.readInt();
+			if (version != CHECKPOINT_VERSION) throw new IOException(fileName + ": checkpoint version " + version + ", can read " + CHECKPOINT_VERSION);
+			int numPlayers = in.readInt();
+			int numTables = in.readInt();
+			Casino c = new Casino(0, numPlayers, numTables, numThreads);
+			c.numRounds = in.readInt();
+			c.numIterations = in.readInt();
+			c.annie = in.readInt();
+			c.startIteration = in.readInt();
+			c.startRound = in.readInt();
+			c.numHands = in.readLong();
+			c.r = Table.readRandom(in);
+			for (int t=0; t<numTables; t++) Table.readDeck(in, c.decks[t]);
+			int numEligible = in.readInt();
+			int[] order = new int[numPlayers];
+			for (int i=0; i<numPlayers; i++) order[i] = in.readInt();
+			Player[] byNumber = new Player[numPlayers];
+			for (int i=0; i<numPlayers; i++) {
+				c.pool[i].readState(in);
+				byNumber[c.pool[i].playerNumber] = c.pool[i];
 			}
-			*/
+			Player[] seating = new Player[numPlayers];
+			for (int i=0; i<numPlayers; i++) seating[i] = byNumber[order[i]];
+			c.seats = new SeatAllocator(c.pool, c.r);
+			c.seats.setOrder(seating, numEligible);
+			return c;
+		} finally {
+			in.close();
+		}
+	}
 
-			Arrays.sort(pool);
-			logFile.initWrite(false);
-			logFile.write("Results after " + numRounds + " rounds: " + "\n");
-			for (int i=0; i<pool.length; i++) {
-				logFile.write(pool[i].getStatusLine());
+	// copy the state now, between rounds, and hand it to the writer thread
+	private void saveCheckpoint(int iteration, int round) {
+		final byte[] state;
+		try {
+			ByteArrayOutputStream b = new ByteArrayOutputStream(256 + 256*pool.length);
+			DataOutputStream out = new DataOutputStream(b);
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeInt(numPlayers);
+			out.writeInt(numTables);
+			out.writeInt(numRounds);
+			out.writeInt(numIterations);
+			out.writeInt(annie);
+			out.writeInt(iteration);
+			out.writeInt(round);
+			out.writeLong(numHands);
+			Table.writeRandom(out, r);
+			for (int t=0; t<numTables; t++) Table.writeDeck(out, decks[t]);
+			Player[] order = seats.getOrder();
+			out.writeInt(seats.numEligible());
+			for (int i=0; i<order.length; i++) out.writeInt(order[i].playerNumber);
+			for (int i=0; i<pool.length; i++) pool[i].writeState(out);
+			out.close();
+			state = b.toByteArray();
+		} catch (IOException e) {
+			Log.error("Cas: Error saving checkpoint - " + e.toString());
+			return;
+		}
+		if (checkpointWriter == null) {
+			checkpointWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread t = new Thread(task, "checkpoint writer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		final String fileName = checkpointFile;
+		checkpointWriter.execute(new Runnable() {
+			public void run() {
+				try {
+					Path target = Paths.get(fileName);
+					Path tmp = Paths.get(fileName + ".tmp");
+					Files.write(tmp, state);
+					Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException e) {
+					Log.error("Cas: Error writing checkpoint " + fileName + " - " + e.toString());
+				}
 			}
-			logFile.closeWrite();
+		});
+	}
 
+	// wait for the checkpoints still being written
+	private void finishCheckpoints() {
+		if (checkpointWriter == null) return;
+		checkpointWriter.shutdown();
+		try {
+			checkpointWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
+		checkpointWriter = null;
+	}
 
-		// report results
-		Arrays.sort(pool);
-		logFile.initWrite(false);
-		logFile.write("Results after " + numRounds + " rounds: " + "\n");
-		for (int i=0; i<pool.length; i++) {
-			logFile.write(pool[i].getStatusLine());
+	/**
+	* Write the pool standings to logFile, if there is one.
+	*/
+	private void writeLog() {
+		if (logFile == null) return;
+		try {
+			ResultsWriter out = new ResultsWriter(logFile.getName(), false);
+			out.write("Results after " + numRounds + " rounds: " + "\n");
+			for (int i=0; i<pool.length; i++) {
+				out.write(pool[i].getStatusLine());
+			}
+			out.close();
+		} catch (IOException e) {
+			Log.error("Cas: Error writing " + logFile.getName() + " - " + e.toString());
 		}
-		logFile.closeWrite();
 	}
 
+	/**
+	* Hand out the given parameters to the pool in turn,
+	* replacing the default mix.  The parameters are only read.
+	*/
+	public void setParams(PlayerParameters[] mix) {
+		for (int i=0; i<pool.length; i++) pool[i].setParams(mix[i % mix.length]);
+	}
+
+	/**
+	* Seat every table of a round, in table order, and seed its deck.
+	* A table is null if there were not enough players left for it.
+	*/
+	private Player[][] seatTables() {
+		Player[][] tables = new Player[numTables][];
+		for (int t=0; t<numTables; t++) {
+			int tableSize = 2+r.nextInt(8); // random table size 2 to 9
+			tables[t] = seats.seat(tableSize);
+			deckRandom[t].setSeed(r.nextLong());
+			if (tables[t] != null) records[t].clear(numHands++, tableSize);
+		}
+		return tables;
+	}
+
+	/**
+	* Play one hand at every table, on the executor if there is one.
+	* Returns once all tables are done.
+	*/
+	private void playTables(final Player[][] tables, ExecutorService exec) {
+		if (exec == null) {
+			for (int t=0; t<tables.length; t++)
+				if (tables[t] != null) playHand(tables[t], decks[t], evals[t], boards[t], records[t]);
+			return;
+		}
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int t=0; t<tables.length; t++) {
+			if (tables[t] == null) continue;
+			final int table = t;
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					playHand(tables[table], decks[table], evals[table], boards[table], records[table]);
+					return null;
+				}
+			});
+		}
+		try {
+			List<Future<Object>> done = exec.invokeAll(tasks);
+			for (int i=0; i<done.size(); i++) done.get(i).get();
+		} catch (Exception e) {
+			throw new RuntimeException("table failed", e);
+		}
+	}
 
 	/**
 	* To be used for competition of bots..
@@ -141,20 +457,36 @@ public class Casino {
 	*  CAREFUL  ACHTUNG MOTHERFUCKER
 	*/
 	public void playHand(Player[] p) {
-		if (debug) {
-			System.out.println("Casino playing hand with " + p.length + " players:");
+		playHand(p, theDeck, handEval, boards[0], null);
+	}
+
+	/**
+	* Play a hand with the given deck, evaluator and board context; tables
+	* played at the same time must each have their own.  The hand is
+	* recorded in rec unless it is null.
+	*/
+	private void playHand(Player[] p, IntDeck theDeck, HandEvaluator handEval, BoardContext board, HandRecord rec) {
+		Bet bet = null;
+		CasinoMetrics.hand();
+		if (Log.isDebug(debug)) {
+			Log.debug("Casino playing hand with " + p.length + " players:");
 			String s = "";
 			for (int i=0; i<p.length; i++) { // give them all a pocket - no betting yet
 				s+= " P" + p[i].playerNumber;
 			}
-			o(s);
+			d(s);
 		}
-		theDeck.shuffle(); // HERE"S THE ONE SHUFFLE PER HAND
+		theDeck.reset(); // all cards back, dealing takes them out at random
+		board.clear(); // worked out once per street for the whole table
 
 
 		int numStillIn = p.length;
 		for (int i=0; i<p.length; i++) { // give them all a pocket
-			p[i].givePocket(theDeck.deal(), theDeck.deal());
+			Card c1 = new Card(theDeck.deal());
+			Card c2 = new Card(theDeck.deal());
+			p[i].givePocket(c1, c2);
+			p[i].setBoard(board);
+			if (rec != null) rec.setSeat(i, p[i].playerNumber, c1, c2);
 			// at this point everybody goes in blind
 			p[i].bankroll-=annie;
 			p[i].amountIn=annie;
@@ -175,9 +507,10 @@ public class Casino {
 		for (int i=0; i<p.length; i++) {
 			// all are still in at first..
 			bet = p[i].getBet(0,currentBet,numStillIn);
-			if (debug) o("Got bet: " + bet.amount);
+			if (rec != null) rec.setBet(0,i,bet);
+			if (Log.isDebug(debug)) d("Got bet: " + bet.amount);
 			if (bet.fold==true) {
-				if (debug) o("we have a fold");
+				if (Log.isDebug(debug)) d("we have a fold");
 				p[i].isActive = false;
 				numStillIn--;
 				foldCash+=p[i].amountIn;
@@ -186,7 +519,7 @@ public class Casino {
 				if (allIn) {
 					// we need to credit this player the remainder of his bet
 					int remainder = bet.amount - cap;
-					if (debug) o("pocket returning money to somebody: " + remainder + " , for all in");
+					if (Log.isDebug(debug)) d("pocket returning money to somebody: " + remainder + " , for all in");
 					p[i].bankroll+=remainder;
 					p[i].amountIn-=remainder;
 				}
@@ -197,7 +530,7 @@ public class Casino {
 				}
 				else {  currentBet = bet.amount; }
 			}
-			else {	System.out.println("*******problems with a pocket bet.. less than currentBet!");	}
+			else {	Log.warn("*******problems with a pocket bet.. less than currentBet!");	}
 		}
 
 		// now a round of calls
@@ -205,23 +538,26 @@ public class Casino {
 		for (int i=0; i<p.length; i++) {
 			if (p[i].isActive && p[i].amountIn<currentBet) {
 				bet = p[i].getBet(1,currentBet,numStillIn);
+				if (rec != null) rec.setBet(1,i,bet);
 				if (bet.fold==true) {
-					if (debug) o("calls in pocket - we have a fold");
+					if (Log.isDebug(debug)) d("calls in pocket - we have a fold");
 					p[i].isActive = false;
 					numStillIn--;  foldCash+=p[i].amountIn;
 				}
 				else if (bet.amount < currentBet) {
-					System.out.println("*******problems with a pocket call.. less than currentBet!");
+					Log.warn("*******problems with a pocket call.. less than currentBet!");
 				}
 			}
 		}
 
 		// flop
-		Card waste = theDeck.deal();
-		Card f1 = theDeck.deal();
-		Card f2 = theDeck.deal();
-		Card f3 = theDeck.deal();
-		if (debug) o("flops: " + f1 + " " + f2 + " " + f3 + " numIn:" + numStillIn + " cb: " + currentBet);
+		theDeck.deal(); // burn
+		Card f1 = new Card(theDeck.deal());
+		Card f2 = new Card(theDeck.deal());
+		Card f3 = new Card(theDeck.deal());
+		if (rec != null) rec.setFlop(f1,f2,f3);
+		board.setFlop(f1,f2,f3);
+		if (Log.isDebug(debug)) d("flops: " + f1 + " " + f2 + " " + f3 + " numIn:" + numStillIn + " cb: " + currentBet);
 		for (int i=0; i<p.length; i++) { // give them all a flop
 			if (p[i].isActive) 	p[i].giveFlop(f1,f2,f3);
 		}
@@ -232,6 +568,7 @@ public class Casino {
 		for (int i=0; i<p.length; i++) {
 			if (p[i].isActive) {
 				bet = p[i].getBet(2,currentBet,numStillIn);
+				if (rec != null) rec.setBet(2,i,bet);
 				if (bet.fold==true) {
 					p[i].isActive = false;
 					numStillIn--;  foldCash+=p[i].amountIn;
@@ -249,7 +586,7 @@ public class Casino {
 					}
 					else {currentBet = bet.amount; }
 				}
-				else {	System.out.println("********problems with a flop bet.. less than currentBet!"); }
+				else {	Log.warn("********problems with a flop bet.. less than currentBet!"); }
 			}
 		}  // now a round of calls
 
@@ -258,18 +595,21 @@ public class Casino {
 		for (int i=0; i<p.length; i++) {
 			if (p[i].isActive && p[i].amountIn<currentBet) {
 				bet = p[i].getBet(3, currentBet,numStillIn);
+				if (rec != null) rec.setBet(3,i,bet);
 				if (bet.fold==true) {
 					p[i].isActive = false;
 					numStillIn--;  foldCash+=p[i].amountIn;
 				}
-				else if (bet.amount < currentBet) {	System.out.println("********problems with a flop call.. less than currentBet!"); }
+				else if (bet.amount < currentBet) {	Log.warn("********problems with a flop call.. less than currentBet!"); }
 			}
 		} // done flop bets
 
 
 		// turn
-		waste = theDeck.deal();
-		Card t1 = theDeck.deal();
+		theDeck.deal(); // burn
+		Card t1 = new Card(theDeck.deal());
+		if (rec != null) rec.board[3] = t1.getIndex();
+		board.add(t1);
 		for (int i=0; i<p.length; i++) { // give them all a flop
 			if (p[i].isActive) 	p[i].giveTurn(t1);
 		}
@@ -279,6 +619,7 @@ public class Casino {
 		for (int i=0; i<p.length; i++) {
 			if (p[i].isActive) {
 				bet = p[i].getBet(4,currentBet,numStillIn);
+				if (rec != null) rec.setBet(4,i,bet);
 				if (bet.fold==true) {
 					p[i].isActive = false;
 					numStillIn--;  foldCash+=p[i].amountIn;
@@ -296,7 +637,7 @@ public class Casino {
 					}
 					else {	currentBet = bet.amount;  }
 				}
-				else {	System.out.println("*****problems with a turn bet.. less than currentBet!"); }
+				else {	Log.warn("*****problems with a turn bet.. less than currentBet!"); }
 			}
 		}
 
@@ -304,20 +645,23 @@ public class Casino {
 		for (int i=0; i<p.length; i++) {
 			if (p[i].isActive && p[i].amountIn<currentBet) {
 				bet = p[i].getBet(5,currentBet,numStillIn);
+				if (rec != null) rec.setBet(5,i,bet);
 				if (bet.fold==true) {
 					p[i].isActive = false;
 					numStillIn--;  foldCash+=p[i].amountIn;
 				}
 				else if (bet.amount < currentBet) {
-					System.out.println("*****problems with a turn call.. less than currentBet!");
+					Log.warn("*****problems with a turn call.. less than currentBet!");
 				}
 			}
 		}
 		// done turn
 
 		// river
-		waste = theDeck.deal();
-		Card r1 = theDeck.deal();
+		theDeck.deal(); // burn
+		Card r1 = new Card(theDeck.deal());
+		if (rec != null) rec.board[4] = r1.getIndex();
+		board.add(r1); // ranks the board with every holding, the players look their river odds up
 		for (int i=0; i<p.length; i++) { // give them all a flop
 			if (p[i].isActive) 	p[i].giveRiver(r1);
 		}
@@ -326,6 +670,7 @@ public class Casino {
 		for (int i=0; i<p.length; i++) {
 			if (p[i].isActive) {
 				bet = p[i].getBet(6,currentBet,numStillIn);
+				if (rec != null) rec.setBet(6,i,bet);
 				if (bet.fold==true) {
 					p[i].isActive = false;
 					numStillIn--;  foldCash+=p[i].amountIn;
@@ -343,7 +688,7 @@ public class Casino {
 					}
 					else { currentBet = bet.amount; }
 				}
-				else {	System.out.println("*****problems with a river bet.. less than currentBet!"); }
+				else {	Log.warn("*****problems with a river bet.. less than currentBet!"); }
 			}
 		}
 
@@ -351,12 +696,13 @@ public class Casino {
 		for (int i=0; i<p.length; i++) {
 			if (p[i].isActive && p[i].amountIn<currentBet) {
 				bet = p[i].getBet(7,currentBet,numStillIn);
+				if (rec != null) rec.setBet(7,i,bet);
 				if (bet.fold==true) {
 					p[i].isActive = false;
 					numStillIn--;  foldCash+=p[i].amountIn;
 				}
 				else if (bet.amount < currentBet) {
-					System.out.println("problems with a river call.. less than currentBet!");
+					Log.warn("problems with a river call.. less than currentBet!");
 				}
 			}
 		}
@@ -365,14 +711,16 @@ public class Casino {
 		// time to reconcile
 		pot += foldCash;
 		pot += numStillIn*currentBet;
+		if (rec != null) rec.pot = pot;
 		// who's still in?
-		if (numStillIn<1) System.out.println("problem - everybody folded!!");
+		if (numStillIn<1) Log.warn("problem - everybody folded!!");
 		else if (numStillIn==1) {
 			for (int i=0; i<p.length; i++) {
 				if (p[i].isActive) {
 					p[i].bankroll+=pot;
 					p[i].broke=false;
-					if (debug) o("Delivering pot to one remainder: " + p[i].playerNumber + " : " + pot + "$");
+					if (rec != null) rec.winners |= 1 << i;
+					if (Log.isDebug(debug)) d("Delivering pot to one remainder: " + p[i].playerNumber + " : " + pot + "$");
 				}
 
 			}
@@ -390,7 +738,8 @@ public class Casino {
 				if (p[i].rank==bestRank) {
 					p[i].bankroll+=pot;
 					p[i].broke=false;
-					if (debug) o("pot goes to showdown winner: " + p[i].playerNumber);
+					if (rec != null) rec.winners |= 1 << i;
+					if (Log.isDebug(debug)) d("pot goes to showdown winner: " + p[i].playerNumber);
 				}
 			}
 
@@ -399,10 +748,23 @@ public class Casino {
 	// done playHand(..)
 
 	public void o(String s) {
-		System.out.println("Cas: " +s);
+		Log.info("Cas: " +s);
+	}
+
+	private void d(String s) {
+		Log.debug("Cas: " +s);
 	}
 
-	public static final void main(String[] args) {
+	/**
+	* args: none                    play the default casino
+	*       resume file [threads]   carry on from a checkpoint
+	*/
+	public static final void main(String[] args) throws IOException {
+		if (args.length >= 2 && args[0].equals("resume")) {
+			Casino c = resume(args[1], (args.length > 2) ? Integer.parseInt(args[2]) : 1);
+			c.run();
+			return;
+		}
 		Casino c = new Casino();
 	}
 }
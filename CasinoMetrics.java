@@ -0,0 +1,251 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of what the casinos in this JVM are doing: hands played,
+ * simulations and the trials and hand evaluations in them (with a
+ * histogram of trials per simulation), estimates reused instead of
+ * simulated again, and the bets made per street.  register() makes them
+ * visible through JMX as kellypoker:type=CasinoMetrics, along with a
+ * histogram of the winnings of the pool watched last.
+ *
+ * The counters are LongAdders, so the threads playing tables do not fight
+ * over one cache line; Table adds up its trials and evaluations in plain
+ * fields and reports them once per simulation, not per trial.  Rates are
+ * worked out when read, over the time since the sample before, at most
+ * one new sample a second.
+ */
+public class CasinoMetrics implements CasinoMetricsMBean {
+
+	public static final String NAME = "kellypoker:type=CasinoMetrics";
+
+	/** bet kinds counted per street */
+	public static final int FOLD = 0;
+	public static final int CALL = 1;
+	public static final int ALL_IN = 2;
+	public static final int BET = 3;
+
+	private static final int NUM_STREETS = 4;
+	private static final int NUM_KINDS = 4;
+	private static final int HISTOGRAM_BUCKETS = 10;
+
+	private static final LongAdder hands = new LongAdder();
+	private static final LongAdder simulations = new LongAdder();
+	private static final LongAdder trials = new LongAdder();
+	private static final LongAdder evaluations = new LongAdder();
+	private static final LongAdder savedSimulations = new LongAdder();
+	private static final LongAdder[] bets = new LongAdder[NUM_STREETS*NUM_KINDS];
+	// simulations by trials run, bucket b holds 2^(b-1) .. 2^b - 1 trials
+	private static final LongAdder[] trialCounts = new LongAdder[32];
+	static {
+		for (int i=0; i<bets.length; i++) bets[i] = new LongAdder();
+		for (int i=0; i<trialCounts.length; i++) trialCounts[i] = new LongAdder();
+	}
+
+	private static volatile Player[] watched;
+	private static CasinoMetrics instance;
+
+	// last two samples of hands, simulations, trials, evaluations
+	private final long[] sample = new long[4];
+	private final long[] lastSample = new long[4];
+	private long sampleTime = System.nanoTime();
+	private long lastSampleTime = sampleTime;
+
+	private CasinoMetrics() { }
+
+	/**
+	 * Make the metrics visible through the platform MBean server, once.
+	 */
+	public static synchronized void register() {
+		if (instance != null) return;
+		instance = new CasinoMetrics();
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(instance, new ObjectName(NAME));
+		} catch (JMException e) {
+			Log.warn("CasinoMetrics: could not register with JMX - " + e.toString());
+		}
+	}
+
+	/**
+	 * The registered metrics, for reading them in process.
+	 */
+	public static synchronized CasinoMetrics get() {
+		register();
+		return instance;
+	}
+
+	/**
+	 * Show the winnings of this pool in the histogram.  The pool is read
+	 * while it plays, so the numbers are a moment's view, not a consistent one.
+	 */
+	public static void watch(Player[] pool) {
+		watched = pool;
+	}
+
+	public static void hand() {
+		hands.increment();
+	}
+
+	/**
+	 * A simulation of numTrials trials which ranked numEvaluations hands.
+	 */
+	public static void simulation(int numTrials, long numEvaluations) {
+		simulations.increment();
+		trials.add(numTrials);
+		trialCounts[32 - Integer.numberOfLeadingZeros(numTrials)].increment();
+		evaluations.add(numEvaluations);
+	}
+
+	/**
+	 * A win probability a player had from the round before, no simulation needed.
+	 */
+	public static void savedSimulation() {
+		savedSimulations.increment();
+	}
+
+	/**
+	 * A bet made in a betting round, 0 to 7 like Player.getBet().
+	 */
+	public static void bet(int round, Bet b) {
+		int kind = b.fold ? FOLD : b.allIn ? ALL_IN : b.call ? CALL : BET;
+		bets[(round/2)*NUM_KINDS + kind].increment();
+	}
+
+	public long getHands() { return hands.sum(); }
+	public long getSimulations() { return simulations.sum(); }
+	public long getTrials() { return trials.sum(); }
+	public long getEvaluations() { return evaluations.sum(); }
+	public long getSavedSimulations() { return savedSimulations.sum(); }
+
+	public double getSavedSimulationsPerHand() {
+		long h = hands.sum();
+		return (h == 0) ? 0 : (double)savedSimulations.sum() / h;
+	}
+
+	public double getHandsPerSecond() { return rate(0); }
+	public double getSimulationsPerSecond() { return rate(1); }
+	public double getTrialsPerSecond() { return rate(2); }
+	public double getEvaluationsPerSecond() { return rate(3); }
+
+	// per second over the last sample interval
+	private synchronized double rate(int i) {
+		long now = System.nanoTime();
+		if (now - sampleTime >= 1000000000L) {
+			System.arraycopy(sample, 0, lastSample, 0, sample.length);
+			lastSampleTime = sampleTime;
+			sample[0] = hands.sum();
+			sample[1] = simulations.sum();
+			sample[2] = trials.sum();
+			sample[3] = evaluations.sum();
+			sampleTime = now;
+		}
+		if (sampleTime == lastSampleTime) return 0;
+		return (sample[i] - lastSample[i]) * 1e9 / (sampleTime - lastSampleTime);
+	}
+
+	public double[] getFoldRates() { return betRates(FOLD); }
+	public double[] getCallRates() { return betRates(CALL); }
+	public double[] getAllInRates() { return betRates(ALL_IN); }
+
+	private static double[] betRates(int kind) {
+		double[] rates = new double[NUM_STREETS];
+		for (int s=0; s<NUM_STREETS; s++) {
+			long total = 0;
+			for (int k=0; k<NUM_KINDS; k++) total += bets[s*NUM_KINDS + k].sum();
+			if (total > 0) rates[s] = (double)bets[s*NUM_KINDS + kind].sum() / total;
+		}
+		return rates;
+	}
+
+	/**
+	 * How many trials the simulations took, in power of two buckets,
+	 * as "from..to:count" separated by spaces, empty buckets left out.
+	 */
+	public String getTrialsHistogram() {
+		StringBuffer s = new StringBuffer();
+		for (int b=0; b<trialCounts.length; b++) {
+			long c = trialCounts[b].sum();
+			if (c == 0) continue;
+			if (s.length() > 0) s.append(' ');
+			long from = (b == 0) ? 0 : 1L << (b-1);
+			s.append(from + ".." + ((1L << b) - 1) + ":" + c);
+		}
+		return s.toString();
+	}
+
+	public int getWinningsMin() {
+		Player[] pool = watched;
+		if (pool == null || pool.length == 0) return 0;
+		int min = Integer.MAX_VALUE;
+		for (int i=0; i<pool.length; i++) min = Math.min(min, pool[i].winnings);
+		return min;
+	}
+
+	public int getWinningsMax() {
+		Player[] pool = watched;
+		if (pool == null || pool.length == 0) return 0;
+		int max = Integer.MIN_VALUE;
+		for (int i=0; i<pool.length; i++) max = Math.max(max, pool[i].winnings);
+		return max;
+	}
+
+	public double getWinningsMean() {
+		Player[] pool = watched;
+		if (pool == null || pool.length == 0) return 0;
+		double sum = 0;
+		for (int i=0; i<pool.length; i++) sum += pool[i].winnings;
+		return sum / pool.length;
+	}
+
+	/**
+	 * Winnings of the watched pool in 10 equal buckets from the lowest to
+	 * the highest, as "from..to:count" separated by spaces.
+	 */
+	public String getWinningsHistogram() {
+		Player[] pool = watched;
+		if (pool == null || pool.length == 0) return "";
+		int[] w = new int[pool.length];
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		for (int i=0; i<pool.length; i++) {
+			w[i] = pool[i].winnings;
+			min = Math.min(min, w[i]);
+			max = Math.max(max, w[i]);
+		}
+		long width = Math.max(1, ((long)max - min + HISTOGRAM_BUCKETS) / HISTOGRAM_BUCKETS);
+		int[] count = new int[HISTOGRAM_BUCKETS];
+		for (int i=0; i<w.length; i++) count[(int)(((long)w[i] - min) / width)]++;
+		StringBuffer s = new StringBuffer();
+		for (int b=0; b<HISTOGRAM_BUCKETS; b++) {
+			long from = min + b*width;
+			if (from > max) break;
+			if (b > 0) s.append(' ');
+			s.append(from + ".." + (from + width - 1) + ":" + count[b]);
+		}
+		return s.toString();
+	}
+
+	public synchronized void reset() {
+		hands.reset();
+		simulations.reset();
+		trials.reset();
+		evaluations.reset();
+		savedSimulations.reset();
+		for (int i=0; i<bets.length; i++) bets[i].reset();
+		for (int i=0; i<trialCounts.length; i++) trialCounts[i].reset();
+		for (int i=0; i<sample.length; i++) sample[i] = lastSample[i] = 0;
+		sampleTime = lastSampleTime = System.nanoTime();
+	}
+
+	/**
+	 * One line for progress output: totals and the current rates.
+	 */
+	public String toString() {
+		return "hands " + getHands() + " (" + (long)getHandsPerSecond() + "/s)"
+				+ " sims " + getSimulations() + " (" + (long)getSimulationsPerSecond() + "/s)"
+				+ " evals " + getEvaluations() + " (" + (long)getEvaluationsPerSecond() + "/s)";
+	}
+}
@@ -0,0 +1,35 @@
+/**
+ * Live numbers of the running casinos, as seen through JMX
+ * (jconsole, VisualVM, ...).  See CasinoMetrics.
+ */
+public interface CasinoMetricsMBean {
+
+	public long getHands();
+	public long getSimulations();
+	public long getTrials();
+	public long getEvaluations();
+	/** equity estimates reused from the bet round in the call round */
+	public long getSavedSimulations();
+	public double getSavedSimulationsPerHand();
+
+	public double getHandsPerSecond();
+	public double getSimulationsPerSecond();
+	public double getTrialsPerSecond();
+	public double getEvaluationsPerSecond();
+
+	/** simulations by number of trials, in power of two buckets */
+	public String getTrialsHistogram();
+
+	/** fraction of the bets in each street, preflop flop turn river, that were a fold */
+	public double[] getFoldRates();
+	public double[] getCallRates();
+	public double[] getAllInRates();
+
+	public int getWinningsMin();
+	public int getWinningsMax();
+	public double getWinningsMean();
+	public String getWinningsHistogram();
+
+	/** set all counters back to zero */
+	public void reset();
+}
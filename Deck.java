@@ -187,7 +187,7 @@ public class Deck {
 	}
 
 	private int randInt(int range) {
-		return (int)(r.nextDouble()*range);
+		return r.nextInt(range);
 	}
 
 }
@@ -0,0 +1,167 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of flop win probabilities.
+ *
+ * A pocket and a flop can be mapped onto each other by renaming suits
+ * (Ah Kh / Qh 7h 2c plays exactly like As Ks / Qs 7s 2d), so the cache key
+ * is a canonical form of (pocket, flop) under the 24 suit permutations plus
+ * the number of opponents.  The 25,989,600 pocket/flop combinations fall
+ * into 1,286,792 keys per opponent count.  The least recently used entries
+ * are dropped once the cache is full.
+ *
+ * Thread safe, so one cache can be shared by every Player of a Casino run.
+ */
+public class EquityCache {
+
+	public static final int DEFAULT_SIZE = 1 << 18;
+
+	// all suit permutations, PERMS[i][s] is the suit s maps to
+	private static final int[][] PERMS = EquityEnumerator.PERMS;
+
+	/** a win probability and the number of trials behind it */
+	static class Entry {
+		final float win;
+		final int trials;
+		Entry(float win, int trials) {
+			this.win = win;
+			this.trials = trials;
+		}
+	}
+
+	private final int maxSize;
+	private final LinkedHashMap<Long,Entry> map;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public EquityCache() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * @param maxSize maximum number of entries kept
+	 */
+	public EquityCache(int maxSize) {
+		this.maxSize = maxSize;
+		map = new LinkedHashMap<Long,Entry>(1024, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Long,Entry> eldest) {
+				return size() > EquityCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Canonical key of a pocket and flop against numOpponents.  Two spots
+	 * get the same key exactly when a suit permutation maps one on the other.
+	 */
+	public static long key(int p1, int p2, int f1, int f2, int f3, int numOpponents) {
+		long best = Long.MAX_VALUE;
+		for (int i=0; i<PERMS.length; i++) {
+			int[] perm = PERMS[i];
+			long k = pack2(map(p1,perm), map(p2,perm));
+			k = (k << 18) | pack3(map(f1,perm), map(f2,perm), map(f3,perm));
+			if (k < best) best = k;
+		}
+		return (best << 8) | numOpponents;
+	}
+
+	public static long key(Card p1, Card p2, Card f1, Card f2, Card f3, int numOpponents) {
+		return key(p1.getIndex(), p2.getIndex(), f1.getIndex(), f2.getIndex(), f3.getIndex(), numOpponents);
+	}
+
+	private static int map(int c, int[] perm) {
+		return Card.NUM_RANKS*perm[c / Card.NUM_RANKS] + c % Card.NUM_RANKS;
+	}
+
+	// two cards, high one first, 6 bits each
+	private static long pack2(int a, int b) {
+		return (a > b) ? (a << 6) | b : (b << 6) | a;
+	}
+
+	// three cards, highest first, 6 bits each
+	private static long pack3(int a, int b, int c) {
+		int t;
+		if (a < b) { t = a; a = b; b = t; }
+		if (b < c) { t = b; b = c; c = t; }
+		if (a < b) { t = a; a = b; b = t; }
+		return (a << 12) | (b << 6) | c;
+	}
+
+	/**
+	 * Look up the win probability of a spot.
+	 * @param key as returned by key()
+	 * @param trials least number of trials the cached value has to be based on
+	 * @return the win probability, or -1 if there is none
+	 */
+	public float get(long key, int trials) {
+		Entry e;
+		synchronized (map) {
+			e = map.get(key);
+		}
+		if (e == null || e.trials < trials) {
+			misses.incrementAndGet();
+			return -1;
+		}
+		hits.incrementAndGet();
+		return e.win;
+	}
+
+	/**
+	 * The cached win probability of a spot with its trials, read together,
+	 * or null.  Not counted; a caller which decides itself whether the
+	 * entry will do calls countHit() or countMiss().
+	 */
+	Entry peek(long key) {
+		synchronized (map) {
+			return map.get(key);
+		}
+	}
+
+	void countHit() { hits.incrementAndGet(); }
+
+	void countMiss() { misses.incrementAndGet(); }
+
+	/**
+	 * Store the win probability of a spot, unless the cache holds one
+	 * based on more trials.
+	 */
+	public void put(long key, int trials, float win) {
+		synchronized (map) {
+			Entry e = map.get(key);
+			if (e == null || e.trials <= trials) map.put(key, new Entry(win, trials));
+		}
+	}
+
+	public void clear() {
+		synchronized (map) {
+			map.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+	}
+
+	public int size() {
+		synchronized (map) {
+			return map.size();
+		}
+	}
+
+	public long getHits() { return hits.get(); }
+
+	public long getMisses() { return misses.get(); }
+
+	/**
+	 * Fraction of lookups answered from the cache.
+	 */
+	public double getHitRate() {
+		long h = hits.get(), m = misses.get();
+		return (h + m == 0) ? 0 : (double)h/(double)(h + m);
+	}
+
+	public String toString() {
+		return "equity cache: " + size() + " entries, " + getHits() + " hits, " + getMisses()
+				+ " misses (" + (int)(100*getHitRate()) + "%)";
+	}
+}
@@ -0,0 +1,331 @@
+/**
+ * Exact all-in equity by full enumeration.
+ *
+ * Given a pocket, a 3-5 card board and a number of opponents, enumerates
+ * every way the rest of the board can come and every set of opponent
+ * holdings, and counts how often the pocket wins outright, ties for the
+ * best hand or loses.  Board runouts that only differ by a permutation of
+ * suits which leaves the known cards alone (e.g. the two suits missing on
+ * a rainbow flop with an offsuit pocket) give the same counts, so only one
+ * runout of each such class is evaluated and weighted by the class size.
+ *
+ * For every runout all remaining two card holdings are ranked once, and the
+ * number of ways to hand N opponents disjoint holdings that are all worse
+ * (or no better) than the pocket is counted without dealing them out one by
+ * one, so one or two opponents are cheap even on the flop.  Use cost() or
+ * isCheap() to decide if a spot should be enumerated or simulated.
+ *
+ * Counts are over unordered sets of opponent holdings and are exact as long
+ * as they fit in a long, which holds for every spot isCheap() accepts.
+ * Not thread safe, use one instance per thread.
+ */
+public class EquityEnumerator {
+
+	/** cost() limit used by isCheap() */
+	public static final double CHEAP_COST = 5.0e6;
+
+	private static final int BOARD_SIZE = 5;
+	private static final int SUIT_MASK = (1 << Card.NUM_RANKS) - 1;
+
+	// all suit permutations, PERMS[i][s] is the suit s maps to; EquityCache uses them too
+	static final int[][] PERMS = new int[24][];
+
+	static {
+		int n = 0;
+		for (int a=0; a<4; a++)
+			for (int b=0; b<4; b++)
+				for (int c=0; c<4; c++)
+					for (int d=0; d<4; d++)
+						if (a!=b && a!=c && a!=d && b!=c && b!=d && c!=d)
+							PERMS[n++] = new int[] {a,b,c,d};
+	}
+
+	private long wins, ties, losses;
+	private long boards;
+	private long nanos;
+
+	// remaining holdings for the current runout
+	private final int[] pairA = new int[Card.NUM_CARDS*Card.NUM_CARDS/2];
+	private final int[] pairB = new int[pairA.length];
+	private final long[] pairMask = new long[pairA.length];
+	private final int[] pairRank = new int[pairA.length];
+	private int[][] sets = new int[3][pairA.length];
+	private final int[] deg = new int[Card.NUM_CARDS];
+
+	private final int[][] usable = new int[PERMS.length][];
+	private int numUsable;
+	private final int[] board = new int[BOARD_SIZE];
+	private final int[] rest = new int[Card.NUM_CARDS];
+
+	public EquityEnumerator() { }
+
+	/**
+	 * Enumerate all remaining boards and opponent holdings.
+	 * @param p1 first pocket card index
+	 * @param p2 second pocket card index
+	 * @param known the board cards dealt so far
+	 * @param numKnown number of board cards in known (3, 4 or 5)
+	 * @param numOpponents number of opponents still in
+	 */
+	public void enumerate(int p1, int p2, int[] known, int numKnown, int numOpponents) {
+		long start = System.nanoTime();
+		wins = ties = losses = 0;
+
+		long dead = (1L << p1) | (1L << p2);
+		for (int i=0; i<numKnown; i++) {
+			board[i] = known[i];
+			dead |= 1L << known[i];
+		}
+
+		// suit permutations which leave the known cards where they are
+		numUsable = 0;
+		for (int i=0; i<PERMS.length; i++)
+			if (permute(dead, PERMS[i]) == dead) usable[numUsable++] = PERMS[i];
+
+		int numRest = 0;
+		for (int c=0; c<Card.NUM_CARDS; c++)
+			if ((dead & (1L << c)) == 0) rest[numRest++] = c;
+
+		runouts(p1, p2, numKnown, 0, numRest, 0L, dead, numOpponents);
+		nanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Enumerate all remaining boards and opponent holdings.
+	 * @param c1 hole card 1
+	 * @param c2 hole card 2
+	 * @param b  the board (3-5 cards)
+	 * @param numOpponents number of opponents still in
+	 */
+	public void enumerate(Card c1, Card c2, Hand b, int numOpponents) {
+		int[] cards = b.getCardArray();
+		int[] known = new int[BOARD_SIZE];
+		for (int i=0; i<b.size(); i++) known[i] = cards[i+1];
+		enumerate(c1.getIndex(), c2.getIndex(), known, b.size(), numOpponents);
+	}
+
+	// deal the rest of the board from rest[from..numRest)
+	private void runouts(int p1, int p2, int n, int from, int numRest, long runout, long dead, int k) {
+		if (n == BOARD_SIZE) {
+			int weight = orbit(runout);
+			if (weight > 0) showdown(p1, p2, dead | runout, weight, k);
+			return;
+		}
+		for (int i=from; i<numRest; i++) {
+			board[n] = rest[i];
+			runouts(p1, p2, n+1, i+1, numRest, runout | (1L << rest[i]), dead, k);
+		}
+	}
+
+	/**
+	 * Size of the class of runouts this one belongs to, or 0 if another
+	 * runout (the smallest by mask) stands in for the class.
+	 */
+	private int orbit(long runout) {
+		int fixed = 0;
+		for (int i=0; i<numUsable; i++) {
+			long image = permute(runout, usable[i]);
+			if (image < runout) return 0;
+			if (image == runout) fixed++;
+		}
+		return numUsable / fixed;
+	}
+
+	private static long permute(long cards, int[] perm) {
+		long image = 0;
+		for (int s=0; s<Card.NUM_SUITS; s++)
+			image |= ((cards >>> (Card.NUM_RANKS*s)) & SUIT_MASK) << (Card.NUM_RANKS*perm[s]);
+		return image;
+	}
+
+	private void showdown(int p1, int p2, long dead, int weight, int k) {
+		int b0 = board[0], b1 = board[1], b2 = board[2], b3 = board[3], b4 = board[4];
+		int myRank = HandRankTable.rankHand7(b0,b1,b2,b3,b4,p1,p2);
+
+		// rank every holding the opponents could have
+		int numPairs = 0;
+		int numCards = 0;
+		for (int a=0; a<Card.NUM_CARDS; a++) {
+			if ((dead & (1L << a)) != 0) continue;
+			numCards++;
+			for (int b=a+1; b<Card.NUM_CARDS; b++) {
+				if ((dead & (1L << b)) != 0) continue;
+				pairA[numPairs] = a;
+				pairB[numPairs] = b;
+				pairMask[numPairs] = (1L << a) | (1L << b);
+				pairRank[numPairs] = HandRankTable.rankHand7(b0,b1,b2,b3,b4,a,b);
+				numPairs++;
+			}
+		}
+		tally(myRank, numPairs, numCards, weight, k);
+	}
+
+	/**
+	 * Exact equity on the river from a table of the ranks of the board with
+	 * every holding, as made by HandEvaluator.getRanks(): no hand is ranked
+	 * here, so one table can serve every player at the table.
+	 * @param boardMask the five board cards, see CardMask
+	 * @param ranks ranks[a][b] is the rank of the board with holding a, b
+	 */
+	public void enumerateRiver(int p1, int p2, long boardMask, int[][] ranks, int numOpponents) {
+		long start = System.nanoTime();
+		wins = ties = losses = 0;
+		long dead = boardMask | (1L << p1) | (1L << p2);
+		int numPairs = 0;
+		int numCards = 0;
+		for (int a=0; a<Card.NUM_CARDS; a++) {
+			if ((dead & (1L << a)) != 0) continue;
+			numCards++;
+			int[] row = ranks[a];
+			for (int b=a+1; b<Card.NUM_CARDS; b++) {
+				if ((dead & (1L << b)) != 0) continue;
+				pairA[numPairs] = a;
+				pairB[numPairs] = b;
+				pairMask[numPairs] = (1L << a) | (1L << b);
+				pairRank[numPairs] = row[b];
+				numPairs++;
+			}
+		}
+		tally(ranks[p1][p2], numPairs, numCards, 1, numOpponents);
+		nanos += System.nanoTime() - start;
+	}
+
+	// split the ranked holdings up by outcome and count the deals of k opponents
+	private void tally(int myRank, int numPairs, int numCards, int weight, int k) {
+		int[] worse = sets[0];
+		int numWorse = 0;
+		for (int i=0; i<numPairs; i++)
+			if (pairRank[i] < myRank) worse[numWorse++] = i;
+		int numNoBetter = numWorse;
+		int[] noBetter = sets[1];
+		for (int i=0; i<numWorse; i++) noBetter[i] = worse[i];
+		for (int i=0; i<numPairs; i++)
+			if (pairRank[i] == myRank) noBetter[numNoBetter++] = i;
+
+		long all = holdings(numCards, k);
+		long w = count(worse, numWorse, k, 0);
+		long nb = (numNoBetter == numWorse) ? w : count(noBetter, numNoBetter, k, 1);
+		wins += weight * w;
+		ties += weight * (nb - w);
+		losses += weight * (all - nb);
+		boards++;
+	}
+
+	/**
+	 * Number of ways to pick k holdings, no two sharing a card, from
+	 * the holdings in set[0..len).  set is left alone, deeper levels of the
+	 * recursion filter into sets[level+2].
+	 */
+	private long count(int[] set, int len, int k, int level) {
+		if (k == 0) return 1;
+		if (len < k) return 0;
+		if (k == 1) return len;
+		if (k == 2) {
+			// all pairs of holdings less the ones sharing a card
+			long shared = 0;
+			for (int i=0; i<len; i++) {
+				deg[pairA[set[i]]]++;
+				deg[pairB[set[i]]]++;
+			}
+			for (int i=0; i<len; i++) {
+				int a = pairA[set[i]], b = pairB[set[i]];
+				shared += (long)deg[a]*(deg[a]-1) + (long)deg[b]*(deg[b]-1);
+				deg[a] = 0;
+				deg[b] = 0;
+			}
+			return ((long)len*(len-1) - shared) / 2;
+		}
+		if (sets.length <= level + 2) {
+			int[][] more = new int[level + 3][];
+			for (int i=0; i<more.length; i++) more[i] = (i < sets.length) ? sets[i] : new int[pairA.length];
+			sets = more;
+		}
+		int[] next = sets[level + 2];
+		long total = 0;
+		for (int i=0; i<len; i++) {
+			long m = pairMask[set[i]];
+			int n = 0;
+			for (int j=i+1; j<len; j++)
+				if ((pairMask[set[j]] & m) == 0) next[n++] = set[j];
+			total += count(next, n, k-1, level+1);
+		}
+		return total;
+	}
+
+	/**
+	 * Number of ways to hand k opponents two cards each out of numCards.
+	 */
+	public static long holdings(int numCards, int k) {
+		long n = 1;
+		for (int i=0; i<k; i++) {
+			int m = numCards - 2*i;
+			n *= (long)m*(m-1)/2;
+		}
+		for (int i=2; i<=k; i++) n /= i;
+		return n;
+	}
+
+	/**
+	 * Rough number of operations enumerate() needs for a spot.
+	 * @param numKnown number of board cards known (3, 4 or 5)
+	 * @param numOpponents number of opponents
+	 */
+	public static double cost(int numKnown, int numOpponents) {
+		int numCards = Card.NUM_CARDS - 2 - numKnown;
+		double runouts = 1;
+		for (int i=0; i<BOARD_SIZE-numKnown; i++) runouts = runouts*(numCards-i)/(i+1);
+		double pairs = (double)(numCards - BOARD_SIZE + numKnown)*(numCards - BOARD_SIZE + numKnown - 1)/2;
+		double work = pairs;
+		for (int i=2; i<numOpponents; i++) work *= pairs/i;
+		return runouts*work;
+	}
+
+	/**
+	 * True if enumerate() is cheap enough to replace a simulation.
+	 */
+	public static boolean isCheap(int numKnown, int numOpponents) {
+		return numKnown >= 3 && numKnown <= BOARD_SIZE && cost(numKnown, numOpponents) <= CHEAP_COST;
+	}
+
+	/**
+	 * Get the number of opponent deals won outright in the last enumeration.
+	 */
+	public long getWins() { return wins; }
+
+	/**
+	 * Get the number of opponent deals tied for the best hand in the last enumeration.
+	 */
+	public long getTies() { return ties; }
+
+	/**
+	 * Get the number of opponent deals lost in the last enumeration.
+	 */
+	public long getLosses() { return losses; }
+
+	/**
+	 * Probability of winning outright, ties count as losses.
+	 */
+	public double getWinProbability() {
+		return (double)wins/(double)(wins+ties+losses);
+	}
+
+	/**
+	 * Probability of tying for the best hand.
+	 */
+	public double getTieProbability() {
+		return (double)ties/(double)(wins+ties+losses);
+	}
+
+	/**
+	 * Number of distinct boards evaluated since this enumerator was created.
+	 */
+	public long getBoardsEvaluated() { return boards; }
+
+	/**
+	 * Distinct boards evaluated per second of enumeration time.
+	 */
+	public double getBoardsPerSecond() {
+		if (nanos == 0) return 0;
+		return boards*1.0e9/nanos;
+	}
+}
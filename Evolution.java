@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evolves PlayerParameters with a genetic algorithm.
+ *
+ * A genome is the 28 numbers of PlayerParameters.toArray(): bet and call
+ * mean and sigma for every street, and the bluff fields.  Each generation
+ * the whole population plays numCasinos seeded casinos together, one
+ * player per genome, and a genome's fitness is its winnings per hand
+ * summed over them.  The casinos are played on a thread pool; they are
+ * seeded from the evolution's random numbers and added up in order, so a
+ * run gives the same generations for any number of threads.
+ *
+ * The next generation keeps the elite best genomes; the rest are bred
+ * from parents picked by tournament selection, by uniform crossover and
+ * gaussian mutation.  Means and sigmas are kept >= 0, bluff chances in
+ * [0, 1].  Every generation a line is written with the best, mean and
+ * spread of the fitness, the diversity of the genes and the best genome.
+ */
+public class Evolution {
+
+	public int populationSize = 40;
+	public int generations = 20;
+	/** casinos played per generation */
+	public int numCasinos = 4;
+	public int numRounds = 2000;
+	public int numTables = 4;
+	public int annie = 50;
+	/** genomes copied unchanged into the next generation */
+	public int elite = 4;
+	public int tournamentSize = 3;
+	public float crossoverRate = 0.7f;
+	/** chance of each gene to mutate */
+	public float mutationRate = 0.1f;
+	/** standard deviation of a mutation of a mean, sigmas and bluffs mutate less */
+	public float mutationSigma = 0.5f;
+
+	private final Random r;
+	private PlayerParameters[] population;
+	private double[] fitness;
+	private ResultsWriter results;
+
+	public Evolution(long seed) {
+		r = new Random(seed);
+	}
+
+	/**
+	 * Write the convergence lines to this file too, besides the log.
+	 */
+	public void setResults(ResultsWriter results) {
+		this.results = results;
+	}
+
+	/**
+	 * Start from these genomes instead of random ones.
+	 */
+	public void setPopulation(PlayerParameters[] p) {
+		population = p.clone();
+		populationSize = p.length;
+	}
+
+	public PlayerParameters[] getPopulation() {
+		return population.clone();
+	}
+
+	/**
+	 * Fitness of the last generation played, in population order.
+	 */
+	public double[] getFitness() {
+		return fitness.clone();
+	}
+
+	public PlayerParameters getBest() {
+		return population[best()];
+	}
+
+	/**
+	 * Play all generations, numThreads casinos at a time.  The population
+	 * left is the last generation played, with its fitness.
+	 */
+	public void run(int numThreads) {
+		if (population == null) randomPopulation();
+		ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+		try {
+			for (int g=0; g<generations; g++) {
+				if (g > 0) breed();
+				evaluate(exec);
+				report(g);
+			}
+		} finally {
+			exec.shutdown();
+		}
+	}
+
+	private void randomPopulation() {
+		population = new PlayerParameters[populationSize];
+		for (int i=0; i<populationSize; i++) {
+			float[] a = new float[PlayerParameters.NUM_PARAMS];
+			for (int k=0; k<a.length; k++) {
+				if (isBluffChance(k)) a[k] = r.nextFloat();
+				else if (isSigma(k)) a[k] = r.nextFloat();
+				else a[k] = 0.25f + 7.75f*r.nextFloat();
+			}
+			population[i] = new PlayerParameters();
+			population[i].fromArray(a);
+		}
+	}
+
+	// layout of toArray(): mean, sig pairs for the 8 bets, then bluff, mean, sig per street
+	private static boolean isSigma(int k) {
+		return (k < 16) ? (k % 2 == 1) : ((k - 16) % 3 == 2);
+	}
+
+	private static boolean isBluffChance(int k) {
+		return k >= 16 && (k - 16) % 3 == 0;
+	}
+
+	// play the casinos of a generation and add up winnings per hand by genome
+	private void evaluate(ExecutorService exec) {
+		List<Future<float[]>> runs = new ArrayList<Future<float[]>>();
+		for (int c=0; c<numCasinos; c++) {
+			final long seed = r.nextLong();
+			runs.add(exec.submit(new Callable<float[]>() {
+				public float[] call() { return play(seed); }
+			}));
+		}
+		fitness = new double[populationSize];
+		try {
+			for (int c=0; c<runs.size(); c++) {
+				float[] perHand = runs.get(c).get();
+				for (int i=0; i<populationSize; i++) fitness[i] += perHand[i];
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Evolution interrupted");
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Evolution: casino failed - " + e.getCause(), e.getCause());
+		}
+	}
+
+	// one casino with the whole population, winnings per hand by genome
+	private float[] play(long seed) {
+		Casino casino = new Casino(seed, populationSize, numTables, 1);
+		casino.annie = annie;
+		casino.numRounds = numRounds;
+		casino.logFile = null;
+		casino.progress = false;
+		casino.setParams(population);
+		casino.run();
+		float[] perHand = new float[populationSize];
+		for (int i=0; i<casino.pool.length; i++) perHand[casino.pool[i].playerNumber] = casino.pool[i].getPerHandRatio();
+		return perHand;
+	}
+
+	private void breed() {
+		Integer[] order = new Integer[populationSize];
+		for (int i=0; i<populationSize; i++) order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) { return Double.compare(fitness[b], fitness[a]); }
+		});
+
+		PlayerParameters[] next = new PlayerParameters[populationSize];
+		int n = 0;
+		for (; n<Math.min(elite, populationSize); n++) next[n] = population[order[n]];
+		for (; n<populationSize; n++) {
+			float[] child = population[select()].toArray();
+			if (r.nextFloat() < crossoverRate) {
+				float[] other = population[select()].toArray();
+				for (int k=0; k<child.length; k++)
+					if (r.nextBoolean()) child[k] = other[k];
+			}
+			mutate(child);
+			next[n] = new PlayerParameters();
+			next[n].fromArray(child);
+		}
+		population = next;
+	}
+
+	// tournament selection: best of tournamentSize genomes picked at random
+	private int select() {
+		int best = r.nextInt(populationSize);
+		for (int i=1; i<tournamentSize; i++) {
+			int c = r.nextInt(populationSize);
+			if (fitness[c] > fitness[best]) best = c;
+		}
+		return best;
+	}
+
+	private void mutate(float[] a) {
+		for (int k=0; k<a.length; k++) {
+			if (r.nextFloat() >= mutationRate) continue;
+			if (isBluffChance(k)) a[k] = Math.min(1, Math.max(0, a[k] + 0.1f*mutationSigma*(float)r.nextGaussian()));
+			else if (isSigma(k)) a[k] = Math.max(0, a[k] + 0.5f*mutationSigma*(float)r.nextGaussian());
+			else a[k] = Math.max(0, a[k] + mutationSigma*(float)r.nextGaussian());
+		}
+	}
+
+	private int best() {
+		int best = 0;
+		for (int i=1; i<populationSize; i++)
+			if (fitness[i] > fitness[best]) best = i;
+		return best;
+	}
+
+	// best, mean and standard deviation of the fitness, mean per gene spread, best genome
+	private void report(int generation) {
+		double mean = 0;
+		for (int i=0; i<populationSize; i++) mean += fitness[i];
+		mean /= populationSize;
+		double var = 0;
+		for (int i=0; i<populationSize; i++) var += (fitness[i]-mean)*(fitness[i]-mean);
+		double sd = Math.sqrt(var / populationSize);
+
+		double diversity = 0;
+		float[][] genes = new float[populationSize][];
+		for (int i=0; i<populationSize; i++) genes[i] = population[i].toArray();
+		for (int k=0; k<PlayerParameters.NUM_PARAMS; k++) {
+			double m = 0, v = 0;
+			for (int i=0; i<populationSize; i++) m += genes[i][k];
+			m /= populationSize;
+			for (int i=0; i<populationSize; i++) v += (genes[i][k]-m)*(genes[i][k]-m);
+			diversity += Math.sqrt(v / populationSize);
+		}
+		diversity /= PlayerParameters.NUM_PARAMS;
+
+		int b = best();
+		Log.info("Evolution: generation " + generation + " best " + (float)fitness[b] + " mean " + (float)mean
+				+ " sd " + (float)sd + " diversity " + (float)diversity);
+		if (results == null) return;
+		StringBuffer s = new StringBuffer();
+		s.append(generation + "\t" + fitness[b] + "\t" + mean + "\t" + sd + "\t" + diversity);
+		float[] a = population[b].toArray();
+		for (int k=0; k<a.length; k++) s.append("\t" + a[k]);
+		try {
+			results.writeLine(s);
+			results.flush();
+		} catch (IOException e) {
+			Log.error("Evolution: error writing results - " + e.toString());
+		}
+	}
+
+	/**
+	 * args: [generations] [numThreads] [results file]
+	 */
+	public static final void main(String[] args) throws IOException {
+		Evolution e = new Evolution(1);
+		if (args.length > 0) e.generations = Integer.parseInt(args[0]);
+		int numThreads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		String fileName = (args.length > 2) ? args[2] : "evolution_results.txt";
+
+		ResultsWriter out = new ResultsWriter(fileName, false);
+		out.writeLine("generation\tbest\tmean\tsd\tdiversity\tbest params..");
+		e.setResults(out);
+		long start = System.currentTimeMillis();
+		e.run(numThreads);
+		out.close();
+		Log.info("Evolution: " + e.generations + " generations in " + (System.currentTimeMillis()-start)/1000 + " s");
+		Log.info("Evolution: best " + e.getBest().getParamsLine());
+	}
+}
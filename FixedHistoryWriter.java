@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes Casino hand histories as fixed width records.
+ *
+ * Every hand takes RECORD_SIZE bytes whatever the number of seats, so
+ * hand i of the file starts at HEADER_SIZE + i*RECORD_SIZE and
+ * MappedHistoryReader can jump straight to it.  Bigger than the
+ * compressed HandHistoryWriter format, but nothing has to be decoded to
+ * get at one hand or one field.
+ *
+ * File layout (big endian):
+ *   header: int MAGIC, int VERSION, int RECORD_SIZE, int MAX_SEATS
+ *   records, each:
+ *     long handNumber, byte numSeats, byte board[5], short winners, int pot
+ *     per seat (MAX_SEATS of them, unused ones zero):
+ *       int playerNumber, byte pocket1, byte pocket2,
+ *       int betAmount[8], byte betFlags[8]
+ */
+public class FixedHistoryWriter implements HandHistory {
+
+	public static final int MAGIC = 0x4b504846;   // "KPHF"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+
+	public static final int SEAT_SIZE = 4 + 1 + 1 + HandRecord.NUM_ROUNDS*(4 + 1);
+	public static final int SEATS_OFFSET = 8 + 1 + HandRecord.BOARD_SIZE + 2 + 4;
+	public static final int RECORD_SIZE = SEATS_OFFSET + HandRecord.MAX_SEATS*SEAT_SIZE;
+
+	// offsets within a record and a seat
+	static final int NUM_SEATS = 8;
+	static final int BOARD = 9;
+	static final int WINNERS = BOARD + HandRecord.BOARD_SIZE;
+	static final int POT = WINNERS + 2;
+	static final int POCKET1 = 4;
+	static final int POCKET2 = 5;
+	static final int BET_AMOUNT = 6;
+	static final int BET_FLAGS = BET_AMOUNT + 4*HandRecord.NUM_ROUNDS;
+
+	/** records buffered before a write */
+	private static final int BUFFER_RECORDS = 2048;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS*RECORD_SIZE);
+	private long handsWritten = 0;
+
+	/**
+	 * Create (or overwrite) a hand history file.
+	 */
+	public FixedHistoryWriter(String fileName) throws IOException {
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(HandRecord.MAX_SEATS);
+	}
+
+	public synchronized void add(HandRecord h) throws IOException {
+		if (buffer.remaining() < RECORD_SIZE) flush();
+		buffer.putLong(h.handNumber);
+		buffer.put((byte)h.numSeats);
+		for (int i=0; i<HandRecord.BOARD_SIZE; i++) buffer.put((byte)h.board[i]);
+		buffer.putShort((short)h.winners);
+		buffer.putInt(h.pot);
+		for (int i=0; i<HandRecord.MAX_SEATS; i++) {
+			boolean used = i < h.numSeats;
+			buffer.putInt(used ? h.playerNumber[i] : 0);
+			buffer.put((byte)(used ? h.pocket1[i] : 0));
+			buffer.put((byte)(used ? h.pocket2[i] : 0));
+			for (int r=0; r<HandRecord.NUM_ROUNDS; r++) buffer.putInt(used ? h.betAmount[r][i] : 0);
+			for (int r=0; r<HandRecord.NUM_ROUNDS; r++) buffer.put((byte)(used ? h.betFlags[r][i] : 0));
+		}
+		handsWritten++;
+	}
+
+	public synchronized void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+	public synchronized long getHandsWritten() { return handsWritten; }
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+}
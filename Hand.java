@@ -139,6 +139,15 @@ public class Hand {
 		return cards;
 	}
 
+	/**
+	 * Obtain the cards in this hand as a CardMask (bit i set for card index i).
+	 */
+	public long getCardMask() {
+		long mask = 0;
+		for (int i=1;i<=cards[0];i++) mask |= 1L << cards[i];
+		return mask;
+	}
+
 
 	/**
 	 * Bubble Sort the hand to have cards in descending order, but card index.
@@ -13,14 +13,22 @@
 public class HandEvaluator {
 
 	private static boolean use_native = false;
+	private static boolean tried_native = false;
 
 	/**
 	 * Construct a new Hand Evaluator.
 	 * If the libeval.so library is present,
 	 * the native methods will be used, otherwise
 	 * the slower java methods will be used instead.
+	 * The library is only looked for the first time.
 	 */
 	public HandEvaluator() {
+		loadNative();
+	}
+
+	private static synchronized void loadNative() {
+		if (tried_native) return;
+		tried_native = true;
 		try {
 			String osname = System.getProperty("os.name");
 			if (osname.equals("Linux")) {
@@ -58,7 +66,7 @@ public class HandEvaluator {
 	 */
 	public int rankHand(Hand h) {
 		if (use_native) return CRankHandFast(h.getCardArray());
-		else return rankHand_Java(h);
+		else return HandRankTable.rankHand(h.getCardArray());
 	}
 
 	/**
@@ -146,7 +154,21 @@ public class HandEvaluator {
 	 * the hand is.
 	 */
 	public int rankHand7(Hand h) {
-		return CRankHandFast7(h.getCardArray());
+		if (use_native) return CRankHandFast7(h.getCardArray());
+		else return HandRankTable.rankHand(h.getCardArray());
+	}
+
+	/**
+	 * Get a numerical ranking of 7 cards without building a Hand.
+	 * Uses the lookup tables in HandRankTable, so the ranks are the
+	 * same as the ones returned by rankHand_Java().
+	 * @param c0 .. c6 card indexes {0..51}
+	 * @return a unique number representing the hand strength of the best
+	 * 5-card poker hand in the given 7 cards. The higher the number, the better
+	 * the hand is.
+	 */
+	public static int rankHand7(int c0, int c1, int c2, int c3, int c4, int c5, int c6) {
+		return HandRankTable.rankHand7(c0,c1,c2,c3,c4,c5,c6);
 	}
 
 
@@ -160,33 +182,46 @@ public class HandEvaluator {
 	 * may be done later.
 	 */
 	public int[][] getRanks(Hand board) {
-		Hand myhand = new Hand(board);
+		int[] myhand = new int[Hand.MAX_CARDS + 1];
+		int[] bc = board.getCardArray();
 		int[][] rc = new int[52][52];
-		int i,j,v,n1,n2;
-        d.reset();
-        d.extractHand(board);
-
-        // tabulate ranks
-		for (i=d.getTopCardIndex();i<Deck.NUM_CARDS;i++) {
-			myhand.addCard(d.getCard(i));
-			n1 = d.getCard(i).getIndex();
+		int i,j,n;
+		if (!use_native && bc[0] >= 3 && bc[0] <= 5) {
+			HandRankTable.rankHoldings(bc, rc);
+			return rc;
+		}
+		d.reset();
+		d.extractHand(board);
+		long dead = d.getDeadMask();
+		for (i=0;i<=bc[0];i++) myhand[i] = bc[i];
+		n = bc[0];
+		myhand[0] = n+2;
+
+		// tabulate ranks
+		for (i=0;i<Deck.NUM_CARDS;i++) {
+			if ((dead & (1L << i)) != 0) continue;
+			myhand[n+1] = i;
 			for (j=i+1;j<Deck.NUM_CARDS;j++) {
-				myhand.addCard(d.getCard(j));
-				n2 = d.getCard(j).getIndex();
-				rc[n1][n2] = rc[n2][n1] = rankHand(myhand);
-				myhand.removeCard();
+				if ((dead & (1L << j)) != 0) continue;
+				myhand[n+2] = j;
+				rc[i][j] = rc[j][i] = rankHand(myhand);
 			}
-			myhand.removeCard();
 		}
 		return rc;
 	}
 
+	// same as rankHand(Hand), straight off a card array
+	private int rankHand(int[] cards) {
+		if (use_native) return CRankHandFast(cards);
+		else return HandRankTable.rankHand(cards);
+	}
+
 
 /**********************************************************************/
 // HAND RANK STUFF
 /**********************************************************************/
 
-	private Deck d = new Deck();
+	private IntDeck d = new IntDeck();
 	private int good = 0;
 	private int bad = 0;
 	private int tied = 0;
@@ -201,37 +236,60 @@ public class HandEvaluator {
 	 */
 	public double handRank(Card c1, Card c2, Hand h) {
 		int i,j,v;
-		Hand myHand = new Hand(h);
-		Hand xxHand = new Hand(h);
-		myHand.addCard(c1);
-		myHand.addCard(c2);
+		int[] myHand = new int[Hand.MAX_CARDS + 1];
+		int[] xxHand = new int[Hand.MAX_CARDS + 1];
+		int[] hc = h.getCardArray();
+		for (i=0;i<=hc[0];i++) myHand[i] = xxHand[i] = hc[i];
+		myHand[++myHand[0]] = c1.getIndex();
+		myHand[++myHand[0]] = c2.getIndex();
 		int myRank = rankHand(myHand);
+		int n = hc[0];
+		xxHand[0] = n+2;
 
 		good = bad = tied = 0;
 
 		// remove all known cards
 		d.reset();
-		d.extractCard(c1);
-		d.extractCard(c2);
+		d.extractCard(c1.getIndex());
+		d.extractCard(c2.getIndex());
 		d.extractHand(h);
+		long dead = d.getDeadMask();
 
-		// tabulate rank
-		for (i=d.getTopCardIndex();i<Deck.NUM_CARDS;i++) {
-			xxHand.addCard(d.getCard(i));
+		// tabulate rank over all cards left
+		for (i=0;i<Deck.NUM_CARDS;i++) {
+			if ((dead & (1L << i)) != 0) continue;
+			xxHand[n+1] = i;
 			for (j=i+1;j<Deck.NUM_CARDS;j++) {
-				xxHand.addCard(d.getCard(j));
-				v = compareHands(myRank,xxHand);
-				if (v == 1) good++;
-				else if (v==2) bad++;
+				if ((dead & (1L << j)) != 0) continue;
+				xxHand[n+2] = j;
+				v = rankHand(xxHand);
+				if (myRank > v) good++;
+				else if (myRank < v) bad++;
 				else tied++;
-				xxHand.removeCard();
 			}
-			xxHand.removeCard();
 		}
 
 		return (double)((double)(good+(double)(tied/2))/(double)(good+bad+tied));
 	}
 
+	private EquityEnumerator enumerator;
+
+	/**
+	 * Calculates the probability of having the best hand
+	 * against several opponents, enumerating all remaining
+	 * board cards and opponent holdings.
+	 * Only use it where EquityEnumerator.isCheap() says so.
+	 * @param c1 hole card 1
+	 * @param c2 hole card 2
+	 * @param h  the board (3-5 cards)
+	 * @param numOpponents the number of opponents
+	 * @return probability of having the best hand, ties counting half.
+	 */
+	public double handRank(Card c1, Card c2, Hand h, int numOpponents) {
+		if (enumerator == null) enumerator = new EquityEnumerator();
+		enumerator.enumerate(c1, c2, h, numOpponents);
+		return enumerator.getWinProbability() + enumerator.getTieProbability()/2;
+	}
 
 	/**
 	 * Get the number of hands worse than the last hand ranked.
@@ -884,7 +942,8 @@ public class HandEvaluator {
 
 	private static final int  ID_GROUP_SIZE  = (Card.NUM_RANKS*Card.NUM_RANKS*Card.NUM_RANKS*Card.NUM_RANKS*Card.NUM_RANKS);
 
-	private static boolean ID_ExistsStraightFlush(Hand h, Byte straight_high, byte major_suit) {
+	// returns the high card of the best straight flush in major_suit, or -1 if there is none
+	private static byte ID_ExistsStraightFlush(Hand h, byte major_suit) {
 	        int i;
 	        int straight;
 	        byte high;
@@ -903,9 +962,8 @@ public class HandEvaluator {
 	                                high = (byte)i;
 	                } else straight = 0;
 	        }
-	        if (high == 0) return false;
-	        straight_high = new Byte(high);
-	        return true;
+	        if (high == 0) return -1;
+	        return high;
 	}
 
 	// suit: Card.NUM_SUITS means any
@@ -961,6 +1019,192 @@ public class HandEvaluator {
 	 * the hand is.
 	 */
 	public static int rankHand_Java(Hand h) {
+		return rankHand_Java(h.getCardArray());
+	}
+
+	// scratch space for rankHand_Java(int[]), one set per thread
+	private static final class IdBuffers {
+		byte[] group_size = new byte[POKER_HAND+1];
+		byte[] paired = new byte[Card.NUM_RANKS];
+		byte[] pair_rank = new byte[2*(POKER_HAND+1)];   // [c][0] at 2*c, [c][1] at 2*c+1
+		byte[] suit_size = new byte[Card.NUM_SUITS];
+		boolean[] present = new boolean[Card.NUM_RANKS];
+	}
+
+	private static final ThreadLocal<IdBuffers> idBuffers = ThreadLocal.withInitial(IdBuffers::new);
+
+	/**
+	 * Same as rankHand_Java(Hand), but works straight off the card array
+	 * and reuses per thread scratch buffers, so no objects are created.
+	 *
+	 * @param cards a 1-9 card array as returned by Hand.getCardArray()
+	 * @return the same rank as rankHand_Java(Hand)
+	 */
+	public static int rankHand_Java(int[] cards) {
+		IdBuffers b = idBuffers.get();
+		byte[] group_size = b.group_size;
+		byte[] paired = b.paired;
+		byte[] pair_rank = b.pair_rank;
+		byte[] suit_size = b.suit_size;
+		int size = cards[0];
+		boolean straight = false;
+		boolean flush = false;
+		int max_hand = (size >= POKER_HAND ? POKER_HAND : size);
+		int r,c,rank,suit;
+		int straight_high = 0;
+		int straight_size;
+		int major_suit = 0;
+
+		// determine pairs, dereference order data, check flush
+		for (r=0;r<Card.NUM_RANKS;r++) paired[r] = 0;
+		for (r=0;r<Card.NUM_SUITS;r++) suit_size[r] = 0;
+		for (r=0;r<=POKER_HAND;r++) group_size[r] = 0;
+		for (r=1;r<=size;r++) {
+			rank = cards[r] % Card.NUM_RANKS;
+			suit = cards[r] / Card.NUM_RANKS;
+
+			paired[rank]++;
+			group_size[paired[rank]]++;
+			group_size[paired[rank]-1]--;
+			if ((++suit_size[suit]) >= POKER_HAND) {
+				flush = true;
+				major_suit = suit;
+			}
+		}
+		// Card.ACE low?
+		straight_size = (paired[Card.ACE] != 0 ? 1 : 0);
+
+		for (r=0;r<pair_rank.length;r++) pair_rank[r] = (byte)Card.NUM_RANKS;
+
+		// check for straight and pair data
+		for (r=0;r<Card.NUM_RANKS;r++) {
+			// check straight
+			if (paired[r]!=0) {
+				if ( (++straight_size)>=POKER_HAND ) {
+					straight = true;
+					straight_high = r;
+				}
+			} else
+				straight_size = 0;
+
+			// get pair ranks, keep two highest of each
+			c = paired[r];
+			if ( c != 0 ) {
+				pair_rank[2*c+1] = pair_rank[2*c];
+				pair_rank[2*c] = (byte)r;
+			}
+		}
+
+		// now id type
+		int ident;
+		int str_flush_hi = (straight && flush) ? ID_ExistsStraightFlush(cards,major_suit,b.present) : -1;
+
+		if (group_size[POKER_HAND]!=0) {
+			ident = FIVEKIND*ID_GROUP_SIZE;
+			ident+=pair_rank[2*POKER_HAND];
+		} else if (str_flush_hi >= 0) {
+			ident = STRAIGHTFLUSH*ID_GROUP_SIZE;
+			ident+=str_flush_hi;
+		} else if (group_size[4] != 0) {
+			ident = FOURKIND*ID_GROUP_SIZE;
+			ident+=pair_rank[2*4]*Card.NUM_RANKS;
+			// Card.NUM_RANKS as second rank just in case 2 sets quads
+			ident+=ID_KickerValue(paired,1,pair_rank[2*4],Card.NUM_RANKS);
+		} else if (group_size[3]>=2) {
+			ident = FULLHOUSE*ID_GROUP_SIZE;
+			ident+=pair_rank[2*3]*Card.NUM_RANKS;
+			ident+=pair_rank[2*3+1];
+		} else if (group_size[3]==1 && group_size[2]!=0) {
+			ident = FULLHOUSE*ID_GROUP_SIZE;
+			ident+=pair_rank[2*3]*Card.NUM_RANKS;
+			ident+=pair_rank[2*2];
+		} else if (flush) {
+			ident = FLUSH*ID_GROUP_SIZE;
+			ident+=ID_KickerValueSuited(cards,5,major_suit,b.present);
+		} else if (straight) {
+			ident = STRAIGHT*ID_GROUP_SIZE;
+			ident+=straight_high;
+		} else if (group_size[3]==1) {
+			ident = THREEKIND*ID_GROUP_SIZE;
+			ident+=pair_rank[2*3]*Card.NUM_RANKS*Card.NUM_RANKS;
+			ident+=ID_KickerValue(paired,max_hand-3,pair_rank[2*3],pair_rank[2*3+1]);
+		} else if (group_size[2]>=2) {
+			ident = TWOPAIR*ID_GROUP_SIZE;
+			ident+=pair_rank[2*2]*Card.NUM_RANKS*Card.NUM_RANKS;
+			ident+=pair_rank[2*2+1]*Card.NUM_RANKS;
+			ident+=ID_KickerValue(paired,max_hand-4,pair_rank[2*2],pair_rank[2*2+1]);
+		} else if (group_size[2]==1) {
+			ident = PAIR*ID_GROUP_SIZE;
+			ident+=pair_rank[2*2]*Card.NUM_RANKS*Card.NUM_RANKS*Card.NUM_RANKS;
+			ident+=ID_KickerValue(paired,max_hand-2,pair_rank[2*2],pair_rank[2*2+1]);
+		} else {
+			ident = HIGH*ID_GROUP_SIZE;
+			ident+=ID_KickerValue(paired,max_hand,pair_rank[2*2],pair_rank[2*2+1]);
+		}
+		return ident;
+	}
+
+	private static int ID_ExistsStraightFlush(int[] cards, int major_suit, boolean[] present) {
+		int i;
+		int straight;
+		int high;
+		for (i=0;i<Card.NUM_RANKS;i++) present[i]=false;
+
+		for (i=1;i<=cards[0];i++)
+			if (cards[i] / Card.NUM_RANKS == major_suit)
+				present[cards[i] % Card.NUM_RANKS] = true;
+
+		straight = present[Card.ACE] ? 1 : 0;
+		high = 0;
+		for (i=0;i<Card.NUM_RANKS;i++) {
+			if (present[i]) {
+				if ( (++straight) >= POKER_HAND)
+					high = i;
+			} else straight = 0;
+		}
+		if (high == 0) return -1;
+		return high;
+	}
+
+	private static int ID_KickerValue(byte[] paired, int kickers, int not_allowed0, int not_allowed1) {
+		int i = Card.ACE;
+		int value=0;
+		while (kickers != 0) {
+			while ( paired[i]==0 || i==not_allowed0 || i==not_allowed1)
+				i--;
+			kickers--;
+			value+=pow(Card.NUM_RANKS,kickers)*i;
+			i--;
+		}
+		return value;
+	}
+
+	private static int ID_KickerValueSuited(int[] cards, int kickers, int suit, boolean[] present) {
+		int i;
+		int value=0;
+
+		for (i=0;i<Card.NUM_RANKS;i++) present[i] = false;
+
+		for (i=1;i<=cards[0];i++)
+			if (cards[i] / Card.NUM_RANKS == suit)
+				present[cards[i] % Card.NUM_RANKS] = true;
+
+		i = Card.ACE;
+		while (kickers != 0) {
+			while (present[i] == false) i--;
+			kickers--;
+			value += pow(Card.NUM_RANKS,kickers)*i;
+			i--;
+		}
+		return value;
+	}
+
+	/**
+	 * The original Card based version of rankHand_Java(), which builds a
+	 * new Card for every lookup.  Only kept as the reference the allocation
+	 * free version is checked against in main().
+	 */
+	static int rankHand_Cards(Hand h) {
 	        boolean straight = false;
 	        boolean flush = false;
 	        byte max_hand = (byte)(h.size() >= POKER_HAND ? POKER_HAND : h.size());
@@ -1025,16 +1269,15 @@ public class HandEvaluator {
 	        // now id type
 	        int ident;
 
-			Byte str_hi = new Byte(straight_high);
+			byte str_flush_hi = (straight && flush) ? ID_ExistsStraightFlush(h,major_suit) : -1;
 
 
 	        if (group_size[POKER_HAND]!=0) {
 	    	    	ident = FIVEKIND*ID_GROUP_SIZE;
 	                ident+=pair_rank[POKER_HAND][0];
-	        } else if ( straight && flush && ID_ExistsStraightFlush(h,str_hi,major_suit)) {
-	        		straight_high = str_hi.byteValue();
+	        } else if (str_flush_hi >= 0) {
 	    	    	ident = STRAIGHTFLUSH*ID_GROUP_SIZE;
-	                ident+=straight_high;
+	                ident+=str_flush_hi;
 	        } else if (group_size[4] != 0) {
 	    	    	ident = FOURKIND*ID_GROUP_SIZE;
 	                ident+=pair_rank[4][0]*Card.NUM_RANKS;
@@ -1143,6 +1386,38 @@ public class HandEvaluator {
 	    return t;
 	}
 
-
+	/**
+	 * Checks that rankHand_Java(int[]), rankHand_Java(Hand) and the lookup
+	 * tables in HandRankTable give the same rank as the original Card based
+	 * code for every one of the C(52,7) 7 card hands.
+	 */
+	public static final void main(String[] args) {
+		Hand h = new Hand();
+		int[] cards = h.getCardArray();
+		long n = 0;
+		long bad = 0;
+		long start = System.currentTimeMillis();
+		for (int c1=0;c1<52;c1++)
+		 for (int c2=c1+1;c2<52;c2++)
+		  for (int c3=c2+1;c3<52;c3++)
+		   for (int c4=c3+1;c4<52;c4++)
+		    for (int c5=c4+1;c5<52;c5++)
+		     for (int c6=c5+1;c6<52;c6++)
+		      for (int c7=c6+1;c7<52;c7++) {
+				h.makeEmpty();
+				h.addCard(c1); h.addCard(c2); h.addCard(c3); h.addCard(c4);
+				h.addCard(c5); h.addCard(c6); h.addCard(c7);
+				int expected = rankHand_Cards(h);
+				if (rankHand_Java(cards) != expected || rankHand_Java(h) != expected
+						|| HandRankTable.rankHand(cards) != expected
+						|| HandRankTable.rankHand7(c1,c2,c3,c4,c5,c6,c7) != expected) {
+					if (bad++ < 10) System.out.println("rank mismatch for" + h);
+				}
+				n++;
+			}
+		System.out.println(n + " hands checked, " + bad + " mismatches, "
+				+ (System.currentTimeMillis()-start)/1000 + " s");
+		if (bad != 0) System.exit(1);
+	}
 
 }
@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+/**
+ * Somewhere Casino can write the hands it plays.
+ */
+public interface HandHistory {
+
+	/**
+	 * Add a hand, the record is copied.
+	 */
+	public void add(HandRecord h) throws IOException;
+
+	/**
+	 * Write out whatever is buffered and close the file.
+	 */
+	public void close() throws IOException;
+}
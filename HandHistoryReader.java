@@ -0,0 +1,226 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads hand histories written by HandHistoryWriter.
+ *
+ * The file is read one block at a time.  After nextBlock() the columns of
+ * the block can be scanned directly (getPot(i), getPlayerNumber(row), ...),
+ * which is the fast way to go over millions of hands, or the hands can be
+ * read one by one into a HandRecord with next().
+ *
+ * Seat rows: hand i of a block has the seat rows getFirstSeat(i) ..
+ * getFirstSeat(i) + getNumSeats(i) - 1.
+ */
+public class HandHistoryReader {
+
+	private final FileChannel channel;
+	private final Inflater inflater = new Inflater();
+	private final ByteBuffer header = ByteBuffer.allocate(12);
+	private byte[] packed = new byte[0];
+	private ByteBuffer raw = ByteBuffer.allocate(0);
+
+	// columns of the current block
+	private int n, s;
+	private long[] handNumber = new long[0];
+	private byte[] numSeats = new byte[0];
+	private int[] firstSeat = new int[0];
+	private int[] pot = new int[0];
+	private short[] winners = new short[0];
+	private byte[] board = new byte[0];
+	private int[] playerNumber = new int[0];
+	private byte[] pocket1 = new byte[0];
+	private byte[] pocket2 = new byte[0];
+	private int[][] betAmount = new int[HandRecord.NUM_ROUNDS][0];
+	private byte[][] betFlags = new byte[HandRecord.NUM_ROUNDS][0];
+
+	// position of next() within the block
+	private int next = 0;
+
+	public HandHistoryReader(String fileName) throws IOException {
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		ByteBuffer start = ByteBuffer.allocate(8);
+		readFully(start);
+		if (start.getInt() != HandHistoryWriter.MAGIC) throw new IOException(fileName + " is not a hand history");
+		int version = start.getInt();
+		if (version != HandHistoryWriter.VERSION)
+			throw new IOException(fileName + ": hand history version " + version + ", can read " + HandHistoryWriter.VERSION);
+	}
+
+	/**
+	 * Read the next block.
+	 * @return false at the end of the file
+	 */
+	public boolean nextBlock() throws IOException {
+		header.clear();
+		if (channel.read(header) <= 0) return false;
+		while (header.hasRemaining())
+			if (channel.read(header) < 0) throw new EOFException("truncated block header");
+		header.flip();
+		int numHands = header.getInt();
+		int rawLen = header.getInt();
+		int len = header.getInt();
+
+		if (packed.length < len) packed = new byte[len];
+		readFully(ByteBuffer.wrap(packed, 0, len));
+		if (raw.capacity() < rawLen) raw = ByteBuffer.allocate(rawLen);
+		inflater.reset();
+		inflater.setInput(packed, 0, len);
+		try {
+			int got = 0;
+			while (got < rawLen && !inflater.finished()) got += inflater.inflate(raw.array(), got, rawLen - got);
+			if (got != rawLen) throw new IOException("block too short");
+		} catch (DataFormatException e) {
+			throw new IOException("corrupt block", e);
+		}
+		raw.clear();
+		raw.limit(rawLen);
+		decode(numHands);
+		next = 0;
+		return true;
+	}
+
+	private void decode(int numHands) throws IOException {
+		n = raw.getInt();
+		s = raw.getInt();
+		if (n != numHands) throw new IOException("block header and data disagree");
+		if (handNumber.length < n) {
+			handNumber = new long[n];
+			numSeats = new byte[n];
+			firstSeat = new int[n];
+			pot = new int[n];
+			winners = new short[n];
+			board = new byte[n*HandRecord.BOARD_SIZE];
+		}
+		if (playerNumber.length < s) {
+			playerNumber = new int[s];
+			pocket1 = new byte[s];
+			pocket2 = new byte[s];
+			for (int r=0; r<HandRecord.NUM_ROUNDS; r++) {
+				betAmount[r] = new int[s];
+				betFlags[r] = new byte[s];
+			}
+		}
+		for (int i=0; i<n; i++) handNumber[i] = raw.getLong();
+		raw.get(numSeats, 0, n);
+		for (int i=0, seat=0; i<n; i++) {
+			firstSeat[i] = seat;
+			seat += numSeats[i];
+		}
+		for (int i=0; i<n; i++) pot[i] = raw.getInt();
+		for (int i=0; i<n; i++) winners[i] = raw.getShort();
+		raw.get(board, 0, n*HandRecord.BOARD_SIZE);
+		for (int i=0; i<s; i++) playerNumber[i] = raw.getInt();
+		raw.get(pocket1, 0, s);
+		raw.get(pocket2, 0, s);
+		for (int r=0; r<HandRecord.NUM_ROUNDS; r++) {
+			for (int i=0; i<s; i++) betAmount[r][i] = raw.getInt();
+			raw.get(betFlags[r], 0, s);
+		}
+	}
+
+	/**
+	 * Read the next hand into rec.
+	 * @return false at the end of the file
+	 */
+	public boolean next(HandRecord rec) throws IOException {
+		while (next == n) {
+			if (!nextBlock()) return false;
+		}
+		int i = next++;
+		rec.clear(handNumber[i], numSeats[i]);
+		rec.pot = pot[i];
+		rec.winners = winners[i];
+		for (int k=0; k<HandRecord.BOARD_SIZE; k++) rec.board[k] = board[i*HandRecord.BOARD_SIZE + k];
+		for (int j=0, row=firstSeat[i]; j<numSeats[i]; j++, row++) {
+			rec.playerNumber[j] = playerNumber[row];
+			rec.pocket1[j] = pocket1[row];
+			rec.pocket2[j] = pocket2[row];
+			for (int r=0; r<HandRecord.NUM_ROUNDS; r++) {
+				rec.betAmount[r][j] = betAmount[r][row];
+				rec.betFlags[r][j] = betFlags[r][row] & 0xff;
+			}
+		}
+		return true;
+	}
+
+	public void close() throws IOException {
+		inflater.end();
+		channel.close();
+	}
+
+	/** number of hands in the current block */
+	public int getBlockSize() { return n; }
+
+	/** number of seat rows in the current block */
+	public int getBlockSeats() { return s; }
+
+	public long getHandNumber(int hand) { return handNumber[hand]; }
+	public int getNumSeats(int hand) { return numSeats[hand]; }
+	public int getFirstSeat(int hand) { return firstSeat[hand]; }
+	public int getPot(int hand) { return pot[hand]; }
+	public int getWinners(int hand) { return winners[hand]; }
+	public int getBoardCard(int hand, int k) { return board[hand*HandRecord.BOARD_SIZE + k]; }
+
+	public int getPlayerNumber(int row) { return playerNumber[row]; }
+	public int getPocket1(int row) { return pocket1[row]; }
+	public int getPocket2(int row) { return pocket2[row]; }
+	public int getBetAmount(int round, int row) { return betAmount[round][row]; }
+	public int getBetFlags(int round, int row) { return betFlags[round][row] & 0xff; }
+
+	private void readFully(ByteBuffer b) throws IOException {
+		while (b.hasRemaining())
+			if (channel.read(b) < 0) throw new EOFException();
+		b.flip();
+	}
+
+	/**
+	 * Scan a hand history and print some totals per player.
+	 * args: file [hands to print]
+	 */
+	public static final void main(String[] args) throws IOException {
+		int show = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+		long start = System.nanoTime();
+		HandHistoryReader in = new HandHistoryReader(args[0]);
+		HandRecord rec = new HandRecord();
+		for (int i=0; i<show && in.next(rec); i++) System.out.println(rec);
+		in.close();
+
+		// column scan: hands, pots and pots won per player
+		in = new HandHistoryReader(args[0]);
+		long hands = 0, pots = 0;
+		long[] won = new long[16];
+		long[] played = new long[16];
+		while (in.nextBlock()) {
+			for (int i=0; i<in.getBlockSize(); i++) {
+				hands++;
+				pots += in.getPot(i);
+				int w = in.getWinners(i);
+				for (int j=0, row=in.getFirstSeat(i); j<in.getNumSeats(i); j++, row++) {
+					int p = in.getPlayerNumber(row);
+					if (p >= played.length) {
+						int len = Math.max(p+1, 2*played.length);
+						won = Arrays.copyOf(won, len);
+						played = Arrays.copyOf(played, len);
+					}
+					played[p]++;
+					if ((w & (1 << j)) != 0) won[p] += in.getPot(i);
+				}
+			}
+		}
+		in.close();
+		double secs = (System.nanoTime() - start)/1.0e9;
+		System.out.println(hands + " hands, average pot " + (hands > 0 ? pots/hands : 0)
+				+ ", scanned at " + (long)(hands/secs) + " hands/s");
+		System.out.println("player\thands\tpots won");
+		for (int p=0; p<played.length; p++)
+			if (played[p] > 0) System.out.println(p + "\t" + played[p] + "\t" + won[p]);
+	}
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Deflater;
+
+/**
+ * Writes Casino hand histories in a compressed, column oriented format.
+ *
+ * Hands are collected in blocks of up to BLOCK_HANDS.  Inside a block each
+ * field is stored as one column, so alike values (bet amounts of one round,
+ * mostly zero, or the board cards) sit next to each other and deflate well.
+ * A block is deflated and written with one channel write.
+ *
+ * File layout (big endian):
+ *   int MAGIC, int VERSION
+ *   blocks: int numHands, int rawLength, int compressedLength, deflated data
+ * Uncompressed block, n hands holding s seats in total:
+ *   int n, int s
+ *   long handNumber[n], byte numSeats[n], int pot[n], short winners[n],
+ *   byte board[5n]
+ *   int playerNumber[s], byte pocket1[s], byte pocket2[s]
+ *   for each of the 8 rounds: int betAmount[s], byte betFlags[s]
+ * Seats are in hand order, and within a hand in seat order.
+ *
+ * HandHistoryReader reads the files back.
+ */
+public class HandHistoryWriter implements HandHistory {
+
+	public static final int MAGIC = 0x4b504848;   // "KPHH"
+	public static final int VERSION = 1;
+	public static final int BLOCK_HANDS = 4096;
+
+	private static final int MAX_SEAT_ROWS = BLOCK_HANDS * HandRecord.MAX_SEATS;
+
+	private final FileChannel channel;
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+	// columns of the current block
+	private final long[] handNumber = new long[BLOCK_HANDS];
+	private final byte[] numSeats = new byte[BLOCK_HANDS];
+	private final int[] pot = new int[BLOCK_HANDS];
+	private final short[] winners = new short[BLOCK_HANDS];
+	private final byte[] board = new byte[BLOCK_HANDS * HandRecord.BOARD_SIZE];
+	private final int[] playerNumber = new int[MAX_SEAT_ROWS];
+	private final byte[] pocket1 = new byte[MAX_SEAT_ROWS];
+	private final byte[] pocket2 = new byte[MAX_SEAT_ROWS];
+	private final int[][] betAmount = new int[HandRecord.NUM_ROUNDS][MAX_SEAT_ROWS];
+	private final byte[][] betFlags = new byte[HandRecord.NUM_ROUNDS][MAX_SEAT_ROWS];
+	private int n, s;
+
+	private final ByteBuffer raw;
+	private byte[] packed;
+	private final ByteBuffer header = ByteBuffer.allocate(12);
+
+	private long handsWritten = 0;
+	private long bytesWritten = 0;
+
+	/**
+	 * Create (or overwrite) a hand history file.
+	 */
+	public HandHistoryWriter(String fileName) throws IOException {
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		raw = ByteBuffer.allocate(rawLength(BLOCK_HANDS, MAX_SEAT_ROWS));
+		packed = new byte[raw.capacity() / 2];
+		ByteBuffer start = ByteBuffer.allocate(8);
+		start.putInt(MAGIC).putInt(VERSION).flip();
+		write(start);
+	}
+
+	/**
+	 * Bytes in an uncompressed block of n hands with s seats.
+	 */
+	static int rawLength(int n, int s) {
+		return 8 + n*(8 + 1 + 4 + 2 + HandRecord.BOARD_SIZE) + s*(4 + 1 + 1 + HandRecord.NUM_ROUNDS*(4 + 1));
+	}
+
+	/**
+	 * Add a hand, the record is copied.
+	 */
+	public synchronized void add(HandRecord h) throws IOException {
+		handNumber[n] = h.handNumber;
+		numSeats[n] = (byte)h.numSeats;
+		pot[n] = h.pot;
+		winners[n] = (short)h.winners;
+		for (int i=0; i<HandRecord.BOARD_SIZE; i++) board[n*HandRecord.BOARD_SIZE + i] = (byte)h.board[i];
+		for (int i=0; i<h.numSeats; i++, s++) {
+			playerNumber[s] = h.playerNumber[i];
+			pocket1[s] = (byte)h.pocket1[i];
+			pocket2[s] = (byte)h.pocket2[i];
+			for (int r=0; r<HandRecord.NUM_ROUNDS; r++) {
+				betAmount[r][s] = h.betAmount[r][i];
+				betFlags[r][s] = (byte)h.betFlags[r][i];
+			}
+		}
+		n++;
+		handsWritten++;
+		if (n == BLOCK_HANDS) flushBlock();
+	}
+
+	/**
+	 * Write the last block and close the file.
+	 */
+	public synchronized void close() throws IOException {
+		if (n > 0) flushBlock();
+		deflater.end();
+		channel.close();
+	}
+
+	public synchronized long getHandsWritten() { return handsWritten; }
+
+	/**
+	 * Compressed bytes written to the file so far.
+	 */
+	public synchronized long getBytesWritten() { return bytesWritten; }
+
+	private void flushBlock() throws IOException {
+		raw.clear();
+		raw.putInt(n).putInt(s);
+		for (int i=0; i<n; i++) raw.putLong(handNumber[i]);
+		raw.put(numSeats, 0, n);
+		for (int i=0; i<n; i++) raw.putInt(pot[i]);
+		for (int i=0; i<n; i++) raw.putShort(winners[i]);
+		raw.put(board, 0, n*HandRecord.BOARD_SIZE);
+		for (int i=0; i<s; i++) raw.putInt(playerNumber[i]);
+		raw.put(pocket1, 0, s);
+		raw.put(pocket2, 0, s);
+		for (int r=0; r<HandRecord.NUM_ROUNDS; r++) {
+			for (int i=0; i<s; i++) raw.putInt(betAmount[r][i]);
+			raw.put(betFlags[r], 0, s);
+		}
+		int rawLen = raw.position();
+
+		deflater.reset();
+		deflater.setInput(raw.array(), 0, rawLen);
+		deflater.finish();
+		int len = 0;
+		while (!deflater.finished()) {
+			if (len == packed.length) {
+				byte[] more = new byte[2*packed.length];
+				System.arraycopy(packed, 0, more, 0, len);
+				packed = more;
+			}
+			len += deflater.deflate(packed, len, packed.length - len);
+		}
+
+		header.clear();
+		header.putInt(n).putInt(rawLen).putInt(len).flip();
+		write(header);
+		write(ByteBuffer.wrap(packed, 0, len));
+		n = 0;
+		s = 0;
+	}
+
+	private void write(ByteBuffer b) throws IOException {
+		while (b.hasRemaining()) bytesWritten += channel.write(b);
+	}
+}
@@ -0,0 +1,295 @@
+/**
+ * Table driven 5-7 card hand ranker.
+ *
+ * A pure java replacement for the native eval library.  The tables are
+ * built once, when the class is loaded, by ranking one representative
+ * hand of every rank pattern with HandEvaluator.rankHand_Java(), so the
+ * ranks returned here are identical to the ones rankHand_Java() gives.
+ *
+ * Every card has a precomputed 64 bit key.  Adding the keys of a hand gives
+ * a base 5 count of each face value (split in a low part for Two..Eight and
+ * a high part for Nine..Ace) and, above bit 32, a 4 bit counter per suit
+ * which starts at 3 so that bit 3 of the counter is set once a suit holds 5
+ * cards.  Hands without a flush are then ranked by a perfect hash of the
+ * face value counts, flushes by the 13 bit face value mask of the flush suit.
+ * No objects are created while ranking.
+ */
+public class HandRankTable {
+
+	private static final int MIN_CARDS = 5;
+	private static final int MAX_CARDS = Hand.MAX_CARDS;
+
+	private static final int LOW_RANKS = 7;    // Two..Eight
+	private static final int HIGH_RANKS = 6;   // Nine..Ace
+	private static final int MAX_COUNT = 4;
+
+	private static final int LOW_BITS = 17;    // 5^7 = 78125 < 2^17
+	private static final int LOW_MASK = (1 << LOW_BITS) - 1;
+	private static final int HIGH_MASK = (1 << 14) - 1;   // 5^6 = 15625 < 2^14
+	private static final int SUIT_SHIFT = 32;
+	private static final long SUIT_INIT = 0x3333L << SUIT_SHIFT;
+	private static final int FLUSH_BITS = 0x8888;
+
+	/** key of each card, see class comment */
+	private static final long[] CARD_KEY = new long[Card.NUM_CARDS];
+
+	/** hash contribution of the low face values, independent of hand size */
+	private static final int[] LOW_HASH;
+
+	/** hash contribution of the high face values, per hand size */
+	private static final int[][] HIGH_HASH = new int[MAX_CARDS + 1][];
+
+	/** rank of a hand without flush by hash, per hand size */
+	private static final int[][] NO_FLUSH = new int[MAX_CARDS + 1][];
+
+	/** rank of a flush by the face value mask of the flush suit */
+	private static final int[] FLUSH = new int[1 << Card.NUM_RANKS];
+
+	// ways[n][s] = number of ways to spread s cards over n face values (at most 4 each)
+	private static final int[][] ways = new int[Card.NUM_RANKS + 1][MAX_CARDS + 1];
+
+	static {
+		for (int c=0; c<Card.NUM_CARDS; c++) {
+			int rank = Card.getRank(c);
+			int suit = c / Card.NUM_RANKS;
+			long key;
+			if (rank < LOW_RANKS) key = pow5(rank);
+			else key = (long)pow5(rank - LOW_RANKS) << LOW_BITS;
+			CARD_KEY[c] = key + (1L << (SUIT_SHIFT + 4*suit));
+		}
+
+		ways[0][0] = 1;
+		for (int n=1; n<=Card.NUM_RANKS; n++)
+			for (int s=0; s<=MAX_CARDS; s++)
+				for (int q=0; q<=MAX_COUNT && q<=s; q++)
+					ways[n][s] += ways[n-1][s-q];
+
+		LOW_HASH = new int[pow5(LOW_RANKS)];
+		int[] q = new int[Card.NUM_RANKS];
+		for (int lo=0; lo<LOW_HASH.length; lo++) {
+			int sum = digits(lo, q, 0, LOW_RANKS);
+			if (sum <= MAX_CARDS) LOW_HASH[lo] = hash(q, LOW_RANKS - 1, 0, sum);
+		}
+
+		for (int n=MIN_CARDS; n<=MAX_CARDS; n++) {
+			HIGH_HASH[n] = new int[pow5(HIGH_RANKS)];
+			for (int hi=0; hi<HIGH_HASH[n].length; hi++) {
+				int sum = digits(hi, q, LOW_RANKS, HIGH_RANKS);
+				if (sum <= n) HIGH_HASH[n][hi] = hash(q, Card.NUM_RANKS - 1, LOW_RANKS, n);
+			}
+			NO_FLUSH[n] = new int[ways[Card.NUM_RANKS][n]];
+			fillNoFlush(n, q, Card.NUM_RANKS - 1, n);
+		}
+
+		for (int mask=0; mask<FLUSH.length; mask++) {
+			if (Integer.bitCount(mask) < MIN_CARDS || Integer.bitCount(mask) > MAX_CARDS) continue;
+			Hand h = new Hand();
+			for (int r=0; r<Card.NUM_RANKS; r++)
+				if ((mask & (1 << r)) != 0) h.addCard(Card.toIndex(r, Card.CLUBS));
+			FLUSH[mask] = HandEvaluator.rankHand_Java(h);
+		}
+	}
+
+	private HandRankTable() { }
+
+	/**
+	 * Get a numerical ranking of a 7 card hand.
+	 * @param c0 .. c6 card indexes {0..51}, all different
+	 * @return the same rank HandEvaluator.rankHand_Java() gives for these cards
+	 */
+	public static int rankHand7(int c0, int c1, int c2, int c3, int c4, int c5, int c6) {
+		long key = SUIT_INIT + CARD_KEY[c0] + CARD_KEY[c1] + CARD_KEY[c2] + CARD_KEY[c3]
+				+ CARD_KEY[c4] + CARD_KEY[c5] + CARD_KEY[c6];
+		int flush = (int)(key >>> SUIT_SHIFT) & FLUSH_BITS;
+		if (flush != 0) {
+			long cards = (1L<<c0) | (1L<<c1) | (1L<<c2) | (1L<<c3) | (1L<<c4) | (1L<<c5) | (1L<<c6);
+			return flushRank(cards, flush);
+		}
+		return NO_FLUSH[7][HIGH_HASH[7][(int)(key >>> LOW_BITS) & HIGH_MASK] + LOW_HASH[(int)key & LOW_MASK]];
+	}
+
+	/**
+	 * Get a numerical ranking of a hand.
+	 * @param cards a card array as returned by Hand.getCardArray()
+	 * @return the same rank HandEvaluator.rankHand_Java() gives for these cards
+	 */
+	public static int rankHand(int[] cards) {
+		int n = cards[0];
+		if (n < MIN_CARDS) return HandEvaluator.rankHand_Java(cards);
+		long key = SUIT_INIT;
+		for (int i=1; i<=n; i++) key += CARD_KEY[cards[i]];
+		int flush = (int)(key >>> SUIT_SHIFT) & FLUSH_BITS;
+		if (flush != 0) {
+			long mask = 0;
+			for (int i=1; i<=n; i++) mask |= 1L << cards[i];
+			return flushRank(mask, flush);
+		}
+		return NO_FLUSH[n][HIGH_HASH[n][(int)(key >>> LOW_BITS) & HIGH_MASK] + LOW_HASH[(int)key & LOW_MASK]];
+	}
+
+	/**
+	 * Get a numerical ranking of a set of cards.
+	 * @param cards a CardMask of at most 7 cards
+	 * @return the same rank HandEvaluator.rankHand_Java() gives for these cards
+	 */
+	public static int rankMask(long cards) {
+		int n = Long.bitCount(cards);
+		if (n < MIN_CARDS) return HandEvaluator.rankHand_Java(CardMask.toHand(cards));
+		long key = SUIT_INIT;
+		for (long m = cards; m != 0; m &= m - 1) key += CARD_KEY[Long.numberOfTrailingZeros(m)];
+		int flush = (int)(key >>> SUIT_SHIFT) & FLUSH_BITS;
+		if (flush != 0) return flushRank(cards, flush);
+		return NO_FLUSH[n][HIGH_HASH[n][(int)(key >>> LOW_BITS) & HIGH_MASK] + LOW_HASH[(int)key & LOW_MASK]];
+	}
+
+	/**
+	 * The hash key of a set of cards.  Keys add up: the key of a hand is
+	 * the key of some of its cards plus cardKey() of each of the others.
+	 * @param cards a CardMask
+	 */
+	public static long key(long cards) {
+		long key = SUIT_INIT;
+		for (long m = cards; m != 0; m &= m - 1) key += CARD_KEY[Long.numberOfTrailingZeros(m)];
+		return key;
+	}
+
+	/**
+	 * What a card adds to a key.
+	 */
+	public static long cardKey(int c) {
+		return CARD_KEY[c];
+	}
+
+	/**
+	 * Get a numerical ranking of a 7 card hand from its key.
+	 * @param key key() of the cards, or built up from cardKey()
+	 * @param cards the same 7 cards as a CardMask, only read for a flush
+	 * @return the same rank rankMask(cards) gives
+	 */
+	public static int rankKey7(long key, long cards) {
+		int flush = (int)(key >>> SUIT_SHIFT) & FLUSH_BITS;
+		if (flush != 0) return flushRank(cards, flush);
+		return NO_FLUSH[7][HIGH_HASH[7][(int)(key >>> LOW_BITS) & HIGH_MASK] + LOW_HASH[(int)key & LOW_MASK]];
+	}
+
+	/**
+	 * Rank many 7 card hands at once.  The hands are given as a structure
+	 * of arrays, card slot by card slot, and each step runs over all hands
+	 * before the next: the keys are summed a slot at a time, then the
+	 * flushes and table lookups are done in one pass, so the loops are
+	 * plain array walks the JIT can unroll and keep in registers.
+	 * @param cards cards[s][i] is card s (0 to 6) of hand i
+	 * @param n number of hands
+	 * @param keys room for n keys, left holding each hand's key
+	 * @param ranks set to the rank of each hand, as rankHand7() gives it
+	 */
+	public static void rankBatch(int[][] cards, int n, long[] keys, int[] ranks) {
+		int[] slot = cards[0];
+		for (int i=0; i<n; i++) keys[i] = SUIT_INIT + CARD_KEY[slot[i]];
+		for (int s=1; s<7; s++) {
+			slot = cards[s];
+			for (int i=0; i<n; i++) keys[i] += CARD_KEY[slot[i]];
+		}
+		int[] high = HIGH_HASH[7];
+		int[] noFlush = NO_FLUSH[7];
+		for (int i=0; i<n; i++) {
+			long key = keys[i];
+			int flush = (int)(key >>> SUIT_SHIFT) & FLUSH_BITS;
+			if (flush != 0) {
+				long mask = 0;
+				for (int s=0; s<7; s++) mask |= 1L << cards[s][i];
+				ranks[i] = flushRank(mask, flush);
+			}
+			else ranks[i] = noFlush[high[(int)(key >>> LOW_BITS) & HIGH_MASK] + LOW_HASH[(int)key & LOW_MASK]];
+		}
+	}
+
+	/**
+	 * Rank a board with every two card holding not on it.  The hash keys
+	 * add up, so the board's key is summed once and each holding costs
+	 * two additions and a lookup.
+	 * @param board a card array as returned by Hand.getCardArray(), 3 to 5 cards
+	 * @param ranks ranks[a][b] and ranks[b][a] are set to the rank of the
+	 *              board with a and b, entries for board cards are left alone
+	 */
+	public static void rankHoldings(int[] board, int[][] ranks) {
+		int n = board[0] + 2;
+		long boardKey = SUIT_INIT;
+		long boardMask = 0;
+		for (int i=1; i<=board[0]; i++) {
+			boardKey += CARD_KEY[board[i]];
+			boardMask |= 1L << board[i];
+		}
+		int[] high = HIGH_HASH[n];
+		int[] noFlush = NO_FLUSH[n];
+		for (int a=0; a<Card.NUM_CARDS; a++) {
+			if ((boardMask & (1L << a)) != 0) continue;
+			long keyA = boardKey + CARD_KEY[a];
+			for (int b=a+1; b<Card.NUM_CARDS; b++) {
+				if ((boardMask & (1L << b)) != 0) continue;
+				long key = keyA + CARD_KEY[b];
+				int flush = (int)(key >>> SUIT_SHIFT) & FLUSH_BITS;
+				int rank;
+				if (flush != 0) rank = flushRank(boardMask | (1L << a) | (1L << b), flush);
+				else rank = noFlush[high[(int)(key >>> LOW_BITS) & HIGH_MASK] + LOW_HASH[(int)key & LOW_MASK]];
+				ranks[a][b] = ranks[b][a] = rank;
+			}
+		}
+	}
+
+	private static int flushRank(long cards, int flush) {
+		int suit = Integer.numberOfTrailingZeros(flush) >>> 2;
+		return FLUSH[(int)(cards >>> (Card.NUM_RANKS*suit)) & ((1 << Card.NUM_RANKS) - 1)];
+	}
+
+	/**
+	 * Perfect hash of the face value counts q[to..from], counting from
+	 * the highest face value down, given the counts add up to total.
+	 */
+	private static int hash(int[] q, int from, int to, int total) {
+		int h = 0;
+		for (int r=from; r>=to; r--) {
+			for (int v=0; v<q[r] && v<=total; v++) h += ways[r][total - v];
+			total -= q[r];
+			if (total < 0) return 0;
+		}
+		return h;
+	}
+
+	/**
+	 * Rank one hand of every face value pattern of n cards.
+	 */
+	private static void fillNoFlush(int n, int[] q, int r, int left) {
+		if (r < 0) {
+			if (left != 0) return;
+			// spread the suits so that no suit gets more than 2 cards
+			Hand h = new Hand();
+			int t = 0;
+			for (int i=0; i<Card.NUM_RANKS; i++)
+				for (int j=0; j<q[i]; j++, t++)
+					h.addCard(Card.toIndex(i, t % Card.NUM_SUITS));
+			NO_FLUSH[n][hash(q, Card.NUM_RANKS - 1, 0, n)] = HandEvaluator.rankHand_Java(h);
+			return;
+		}
+		for (q[r]=0; q[r]<=MAX_COUNT && q[r]<=left; q[r]++)
+			fillNoFlush(n, q, r - 1, left - q[r]);
+		q[r] = 0;
+	}
+
+	// split a base 5 number into q[offset..offset+len-1], return digit sum
+	private static int digits(int x, int[] q, int offset, int len) {
+		int sum = 0;
+		for (int i=0; i<len; i++) {
+			q[offset + i] = x % 5;
+			sum += x % 5;
+			x /= 5;
+		}
+		return sum;
+	}
+
+	private static int pow5(int p) {
+		int res = 1;
+		while (p-- > 0) res *= 5;
+		return res;
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Everything that happened in one Casino hand: who sat where, the cards,
+ * every bet asked for in the 8 betting rounds, the pot and who won it.
+ *
+ * Filled in by Casino.playHand when hand histories are recorded, and by
+ * the hand history readers.  One record is reused hand after hand.
+ */
+public class HandRecord {
+
+	public static final int MAX_SEATS = 10;
+	public static final int NUM_ROUNDS = 8;
+	public static final int BOARD_SIZE = 5;
+
+	/** flags of a bet, ACTED is set for every seat asked to bet in a round */
+	public static final int ACTED = 1;
+	public static final int FOLD = 2;
+	public static final int ALL_IN = 4;
+	public static final int CALL = 8;
+	public static final int CHECK = 16;
+
+	public long handNumber;
+	public int numSeats;
+	public final int[] playerNumber = new int[MAX_SEATS];
+	public final int[] pocket1 = new int[MAX_SEATS];
+	public final int[] pocket2 = new int[MAX_SEATS];
+	public final int[] board = new int[BOARD_SIZE];
+
+	/** betAmount[round][seat], betFlags[round][seat] */
+	public final int[][] betAmount = new int[NUM_ROUNDS][MAX_SEATS];
+	public final int[][] betFlags = new int[NUM_ROUNDS][MAX_SEATS];
+
+	public int pot;
+	/** bit i set if seat i got the pot */
+	public int winners;
+
+	/**
+	 * Start a new hand.
+	 */
+	public void clear(long handNumber, int numSeats) {
+		this.handNumber = handNumber;
+		this.numSeats = numSeats;
+		for (int r=0; r<NUM_ROUNDS; r++) {
+			for (int i=0; i<MAX_SEATS; i++) {
+				betAmount[r][i] = 0;
+				betFlags[r][i] = 0;
+			}
+		}
+		for (int i=0; i<BOARD_SIZE; i++) board[i] = Card.BAD_CARD;
+		pot = 0;
+		winners = 0;
+	}
+
+	/**
+	 * Record who sits in a seat and the pocket dealt to them.
+	 */
+	public void setSeat(int seat, int player, Card c1, Card c2) {
+		playerNumber[seat] = player;
+		pocket1[seat] = c1.getIndex();
+		pocket2[seat] = c2.getIndex();
+	}
+
+	public void setFlop(Card f1, Card f2, Card f3) {
+		board[0] = f1.getIndex();
+		board[1] = f2.getIndex();
+		board[2] = f3.getIndex();
+	}
+
+	/**
+	 * Record the bet a seat made in a round.
+	 */
+	public void setBet(int round, int seat, Bet b) {
+		int f = ACTED;
+		if (b.fold) f |= FOLD;
+		if (b.allIn) f |= ALL_IN;
+		if (b.call) f |= CALL;
+		if (b.check) f |= CHECK;
+		betAmount[round][seat] = b.amount;
+		betFlags[round][seat] = f;
+	}
+
+	public boolean isWinner(int seat) {
+		return (winners & (1 << seat)) != 0;
+	}
+
+	/**
+	 * Seat of a player in this hand, or -1 if the player did not play.
+	 */
+	public int seatOf(int player) {
+		for (int i=0; i<numSeats; i++)
+			if (playerNumber[i] == player) return i;
+		return -1;
+	}
+
+	public String toString() {
+		StringBuffer s = new StringBuffer();
+		s.append("hand " + handNumber + " pot " + pot + " board");
+		for (int i=0; i<BOARD_SIZE; i++)
+			if (board[i] != Card.BAD_CARD) s.append(" " + new Card(board[i]));
+		for (int i=0; i<numSeats; i++) {
+			s.append("\n  P" + playerNumber[i] + " " + new Card(pocket1[i]) + new Card(pocket2[i]));
+			for (int r=0; r<NUM_ROUNDS; r++) {
+				if (betFlags[r][i] == 0) continue;
+				s.append(" " + r + ":" + ((betFlags[r][i] & FOLD) != 0 ? "fold" : ""+betAmount[r][i]));
+			}
+			if (isWinner(i)) s.append(" wins");
+		}
+		return s.toString();
+	}
+}
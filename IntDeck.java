@@ -0,0 +1,167 @@
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+/**
+ *  A deck of 52 card indexes for simulations.
+ *
+ *  Works like Deck, but with plain ints: cards[0..top) have been dealt or
+ *  extracted, the rest are still in the deck.  The cards out of the deck are
+ *  also kept as a 64 bit mask (bit i set = card i is out).  where[c] tracks
+ *  the position of every card, so extracting a known card is O(1).
+ *
+ *  There is no full shuffle: deal() swaps a random live card to the top,
+ *  which is one step of a Fisher-Yates shuffle, so only as many positions
+ *  are shuffled as cards are dealt.  Since the live cards are dealt at
+ *  random whatever order they are in, putting cards back (reset, restore)
+ *  just moves the top back.
+ */
+public class IntDeck {
+	public static final int NUM_CARDS = Card.NUM_CARDS;
+
+	private final int[] cards = new int[NUM_CARDS];
+	private final int[] where = new int[NUM_CARDS];
+	private int top;
+	private long dead;
+	private RandomGenerator r;
+
+	/**
+	 * Constructor.
+	 */
+	public IntDeck() {
+		this(new Random());
+	}
+
+	/**
+	 * Constructor w/ random source.
+	 * @param r random numbers to deal with
+	 */
+	public IntDeck(RandomGenerator r) {
+		this.r = r;
+		for (int i=0; i<NUM_CARDS; i++) {
+			cards[i] = i;
+			where[i] = i;
+		}
+	}
+
+	/**
+	 * Change the random numbers used to deal.
+	 */
+	public void setRandom(RandomGenerator r) {
+		this.r = r;
+	}
+
+	/**
+	 * Places all cards back into the deck. O(1)
+	 */
+	public void reset() {
+		top = 0;
+		dead = 0;
+	}
+
+	/**
+	 * Obtain the number of cards out of the deck, to restore() to later.
+	 */
+	public int getTopCardIndex() {
+		return top;
+	}
+
+	/**
+	 * Put back every card dealt or extracted since getTopCardIndex() was
+	 * mark.  O(number of cards put back)
+	 */
+	public void restore(int mark) {
+		while (top > mark) dead &= ~(1L << cards[--top]);
+	}
+
+	/**
+	 * Deal a random card from the deck.
+	 * @return the card index, or Card.BAD_CARD if the deck is empty
+	 */
+	public int deal() {
+		if (top == NUM_CARDS) return Card.BAD_CARD;
+		int c = cards[top + r.nextInt(NUM_CARDS - top)];
+		moveToTop(c);
+		return c;
+	}
+
+	/**
+	 * Remove a known card from the deck.
+	 * @return false if the card was already out of the deck
+	 */
+	public boolean extractCard(int c) {
+		if ((dead & (1L << c)) != 0) return false;
+		moveToTop(c);
+		return true;
+	}
+
+	/**
+	 * Remove all cards in the given hand from the deck.
+	 */
+	public void extractHand(Hand h) {
+		int[] hc = h.getCardArray();
+		for (int i=1; i<=hc[0]; i++) extractCard(hc[i]);
+	}
+
+	private void moveToTop(int c) {
+		int at = where[c];
+		int other = cards[top];
+		cards[at] = other;
+		where[other] = at;
+		cards[top] = c;
+		where[c] = top;
+		top++;
+		dead |= 1L << c;
+	}
+
+	/**
+	 * True if card c has been dealt or extracted.
+	 */
+	public boolean isDead(int c) {
+		return (dead & (1L << c)) != 0;
+	}
+
+	/**
+	 * Mask of the cards out of the deck, bit i set for card index i.
+	 */
+	public long getDeadMask() {
+		return dead;
+	}
+
+	/**
+	 * Obtain the number of cards left in the deck
+	 */
+	public int cardsLeft() {
+		return NUM_CARDS - top;
+	}
+
+	/**
+	 * Obtain the card at position i, dealt if i < getTopCardIndex()
+	 */
+	public int getCard(int i) {
+		return cards[i];
+	}
+
+	/**
+	 * Arrange the cards in the given order, as read with getCard(), and put
+	 * them all back.  The order decides what deal() gives for the same
+	 * random numbers, so restoring it continues a deck exactly.
+	 */
+	public void setOrder(int[] order) {
+		for (int i=0; i<NUM_CARDS; i++) {
+			cards[i] = order[i];
+			where[order[i]] = i;
+		}
+		reset();
+	}
+
+	public String toString() {
+		StringBuffer s = new StringBuffer();
+		s.append("* ");
+		for (int i=0;i<top;i++)
+			s.append(new Card(cards[i]).toString()+" ");
+		s.append("\n* ");
+		for (int i=top;i<NUM_CARDS;i++)
+			s.append(new Card(cards[i]).toString()+" ");
+		return s.toString();
+	}
+}
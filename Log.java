@@ -0,0 +1,139 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Logging for the simulation classes, written out on a background thread.
+ *
+ * A message below the current level is dropped before its text is built:
+ * pass a Supplier, or test isEnabled() first, and no strings are put
+ * together for it.  Enabled messages go into a bounded queue, which a
+ * daemon thread drains and prints in batches, so the thread playing hands
+ * does not wait on the console.  If the queue is full the caller waits
+ * for room, nothing is lost.  flush() waits until everything logged so
+ * far is out; a shutdown hook calls it, so nothing queued is lost at exit.
+ */
+public class Log {
+
+	public static final int DEBUG = 0;
+	public static final int INFO = 1;
+	public static final int WARN = 2;
+	public static final int ERROR = 3;
+	public static final int OFF = 4;
+
+	/** messages the queue can hold */
+	public static final int CAPACITY = 8192;
+
+	private static volatile int level = DEBUG;
+	private static volatile PrintStream out = System.out;
+
+	private static final ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<String>(CAPACITY);
+	private static final Object writeLock = new Object();
+	private static final AtomicLong queued = new AtomicLong();
+	private static long written = 0;   // guarded by writeLock
+
+	static {
+		Thread writer = new Thread(new Runnable() {
+			public void run() { writeLoop(); }
+		}, "log writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() { flush(); }
+		}, "log flush"));
+	}
+
+	private Log() { }
+
+	/**
+	 * Only messages of this level or above are logged, OFF for none.
+	 */
+	public static void setLevel(int l) { level = l; }
+
+	public static int getLevel() { return level; }
+
+	public static boolean isEnabled(int l) { return l >= level; }
+
+	/**
+	 * True if a class's debug flag is set and debug messages are logged,
+	 * so a debug message is worth putting together.
+	 */
+	public static boolean isDebug(boolean flag) { return flag && DEBUG >= level; }
+
+	/**
+	 * Print to another stream from now on.
+	 */
+	public static void setOut(PrintStream p) {
+		flush();
+		out = p;
+	}
+
+	public static void debug(String msg) { log(DEBUG, msg); }
+	public static void info(String msg) { log(INFO, msg); }
+	public static void warn(String msg) { log(WARN, msg); }
+	public static void error(String msg) { log(ERROR, msg); }
+
+	public static void debug(Supplier<String> msg) { log(DEBUG, msg); }
+	public static void info(Supplier<String> msg) { log(INFO, msg); }
+
+	public static void log(int l, Supplier<String> msg) {
+		if (l >= level) log(l, msg.get());
+	}
+
+	public static void log(int l, String msg) {
+		if (l < level) return;
+		queued.incrementAndGet();
+		try {
+			queue.put(msg);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			synchronized (writeLock) {
+				out.println(msg);
+				written++;
+				writeLock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Wait until every message logged so far has been printed.
+	 */
+	public static void flush() {
+		long target = queued.get();
+		synchronized (writeLock) {
+			while (written < target) {
+				try {
+					writeLock.wait(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private static void writeLoop() {
+		ArrayList<String> batch = new ArrayList<String>(CAPACITY);
+		StringBuilder s = new StringBuilder();
+		String lineEnd = System.lineSeparator();
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				continue;
+			}
+			queue.drainTo(batch);
+			for (int i=0; i<batch.size(); i++) s.append(batch.get(i)).append(lineEnd);
+			synchronized (writeLock) {
+				out.print(s);
+				out.flush();
+				written += batch.size();
+				writeLock.notifyAll();
+			}
+			batch.clear();
+			s.setLength(0);
+		}
+	}
+}
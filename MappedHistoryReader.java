@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to a hand history written by FixedHistoryWriter.
+ *
+ * The file is memory mapped, in segments of a whole number of records
+ * since one mapping can not be larger than 2 GB.  Since every record has
+ * the same size, record i is found by arithmetic, and single fields
+ * (pot, who sat where) are read in place without decoding the hand.
+ *
+ * Record indexes run from 0 to getNumHands()-1; Casino numbers its hands
+ * from 0 in the order they are written, so for a Casino file the record
+ * index is the hand number.  Use find() for files that do not start at 0.
+ */
+public class MappedHistoryReader {
+
+	private static final int RECORD = FixedHistoryWriter.RECORD_SIZE;
+	private static final int SEAT = FixedHistoryWriter.SEAT_SIZE;
+
+	/** records per mapped segment, a segment stays under 1 GB */
+	private static final int SEGMENT_RECORDS = (1 << 30) / RECORD;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+	private final long numHands;
+
+	public MappedHistoryReader(String fileName) throws IOException {
+		channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		ByteBuffer header = ByteBuffer.allocate(FixedHistoryWriter.HEADER_SIZE);
+		while (header.hasRemaining())
+			if (channel.read(header) < 0) throw new IOException(fileName + " is too short for a hand history");
+		header.flip();
+		if (header.getInt() != FixedHistoryWriter.MAGIC) throw new IOException(fileName + " is not a fixed width hand history");
+		int version = header.getInt();
+		if (version != FixedHistoryWriter.VERSION || header.getInt() != RECORD || header.getInt() != HandRecord.MAX_SEATS)
+			throw new IOException(fileName + ": hand history version " + version + ", can read " + FixedHistoryWriter.VERSION);
+
+		numHands = (channel.size() - FixedHistoryWriter.HEADER_SIZE) / RECORD;
+		int numSegments = (int)((numHands + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS);
+		segments = new MappedByteBuffer[numSegments];
+		for (int i=0; i<numSegments; i++) {
+			long first = (long)i*SEGMENT_RECORDS;
+			long count = Math.min(SEGMENT_RECORDS, numHands - first);
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+					FixedHistoryWriter.HEADER_SIZE + first*RECORD, count*RECORD);
+		}
+	}
+
+	/**
+	 * Number of complete hands in the file.
+	 */
+	public long getNumHands() { return numHands; }
+
+	// segment holding record i, and the offset of record i in it
+	private ByteBuffer segment(long i) {
+		if (i < 0 || i >= numHands) throw new IndexOutOfBoundsException("hand " + i + " of " + numHands);
+		return segments[(int)(i / SEGMENT_RECORDS)];
+	}
+
+	private static int offset(long i) {
+		return (int)(i % SEGMENT_RECORDS) * RECORD;
+	}
+
+	public long getHandNumber(long i) {
+		return segment(i).getLong(offset(i));
+	}
+
+	public int getNumSeats(long i) {
+		return segment(i).get(offset(i) + FixedHistoryWriter.NUM_SEATS);
+	}
+
+	public int getPot(long i) {
+		return segment(i).getInt(offset(i) + FixedHistoryWriter.POT);
+	}
+
+	public int getWinners(long i) {
+		return segment(i).getShort(offset(i) + FixedHistoryWriter.WINNERS);
+	}
+
+	public int getPlayerNumber(long i, int seat) {
+		return segment(i).getInt(offset(i) + FixedHistoryWriter.SEATS_OFFSET + seat*SEAT);
+	}
+
+	/**
+	 * Seat of a player in hand i, or -1 if the player did not play it.
+	 */
+	public int seatOf(long i, int player) {
+		ByteBuffer b = segment(i);
+		int at = offset(i);
+		int n = b.get(at + FixedHistoryWriter.NUM_SEATS);
+		for (int seat=0; seat<n; seat++)
+			if (b.getInt(at + FixedHistoryWriter.SEATS_OFFSET + seat*SEAT) == player) return seat;
+		return -1;
+	}
+
+	/**
+	 * Index of the first hand in [from, to) the player sat in, or -1.
+	 */
+	public long nextForPlayer(int player, long from, long to) {
+		to = Math.min(to, numHands);
+		for (long i=Math.max(from, 0); i<to; i++)
+			if (seatOf(i, player) >= 0) return i;
+		return -1;
+	}
+
+	/**
+	 * Index of the record of a hand number, or -1.  Hand numbers grow through
+	 * the file, so this is a binary search.
+	 */
+	public long find(long handNumber) {
+		long lo = 0, hi = numHands - 1;
+		while (lo <= hi) {
+			long mid = (lo + hi) >>> 1;
+			long h = getHandNumber(mid);
+			if (h < handNumber) lo = mid + 1;
+			else if (h > handNumber) hi = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Decode record i into rec.
+	 */
+	public void read(long i, HandRecord rec) {
+		ByteBuffer b = segment(i);
+		int at = offset(i);
+		rec.clear(b.getLong(at), b.get(at + FixedHistoryWriter.NUM_SEATS));
+		for (int k=0; k<HandRecord.BOARD_SIZE; k++) rec.board[k] = b.get(at + FixedHistoryWriter.BOARD + k);
+		rec.winners = b.getShort(at + FixedHistoryWriter.WINNERS);
+		rec.pot = b.getInt(at + FixedHistoryWriter.POT);
+		for (int seat=0; seat<rec.numSeats; seat++) {
+			int s = at + FixedHistoryWriter.SEATS_OFFSET + seat*SEAT;
+			rec.playerNumber[seat] = b.getInt(s);
+			rec.pocket1[seat] = b.get(s + FixedHistoryWriter.POCKET1);
+			rec.pocket2[seat] = b.get(s + FixedHistoryWriter.POCKET2);
+			for (int r=0; r<HandRecord.NUM_ROUNDS; r++) {
+				rec.betAmount[r][seat] = b.getInt(s + FixedHistoryWriter.BET_AMOUNT + 4*r);
+				rec.betFlags[r][seat] = b.get(s + FixedHistoryWriter.BET_FLAGS + r) & 0xff;
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Print a hand, or a player's hands in a range.
+	 * args: file hand            print one hand
+	 *       file player from to  hands player played in [from, to) and the pots won
+	 */
+	public static final void main(String[] args) throws IOException {
+		MappedHistoryReader in = new MappedHistoryReader(args[0]);
+		HandRecord rec = new HandRecord();
+		System.out.println(in.getNumHands() + " hands");
+		if (args.length == 2) {
+			long i = in.find(Long.parseLong(args[1]));
+			if (i < 0) System.out.println("no hand " + args[1]);
+			else {
+				in.read(i, rec);
+				System.out.println(rec);
+			}
+		}
+		else if (args.length >= 4) {
+			int player = Integer.parseInt(args[1]);
+			long from = Long.parseLong(args[2]), to = Long.parseLong(args[3]);
+			long start = System.nanoTime();
+			long hands = 0, won = 0, pots = 0;
+			for (long i=in.nextForPlayer(player, from, to); i>=0; i=in.nextForPlayer(player, i+1, to)) {
+				hands++;
+				if ((in.getWinners(i) & (1 << in.seatOf(i, player))) != 0) {
+					won++;
+					pots += in.getPot(i);
+				}
+			}
+			System.out.println("player " + player + ": " + hands + " hands, " + won + " pots won worth " + pots
+					+ " (" + (System.nanoTime()-start)/1000000 + " ms)");
+		}
+		in.close();
+	}
+}
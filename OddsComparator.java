@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.util.Random;
 /**
 *  Compare random wins and losses to
@@ -5,7 +6,7 @@ import java.util.Random;
 */
 public class OddsComparator {
 	public Random r;
-	public file outF = new file("oc_results4.txt");
+	public String outFile = "oc_results4.txt";
 	public float hand1;
 
 	float s,v,f,P;
@@ -15,7 +16,13 @@ public class OddsComparator {
 		v=8.0f;
 		f=0.1f;
 		P=0.2f;
-		outF.initWrite(false);
+		ResultsWriter outF;
+		try {
+			outF = new ResultsWriter(outFile, false);
+		} catch (IOException e) {
+			Log.error("OddsComparator: can't write " + outFile + " - " + e.toString());
+			return;
+		}
 		r=new Random();
 		int numWins = 0;
 		int numLosses = 0;
@@ -68,10 +75,19 @@ public class OddsComparator {
 				numLosses4++;
 				bankroll4 -= bankroll4*f;
 			}
-			outF.write(bankroll+"\t"+bankroll2+"\t"+bankroll3+"\t"+bankroll4+"\t"+
-					getBankWinsFirst(i,s,f,v,P)+"\n");
+			try {
+				outF.write(bankroll+"\t"+bankroll2+"\t"+bankroll3+"\t"+bankroll4+"\t"+
+						getBankWinsFirst(i,s,f,v,P)+"\n");
+			} catch (IOException e) {
+				Log.error("OddsComparator: error writing results - " + e.toString());
+				break;
+			}
+		}
+		try {
+			outF.close();
+		} catch (IOException e) {
+			Log.error("OddsComparator: error writing results - " + e.toString());
 		}
-		outF.closeWrite();
 
 	}
 
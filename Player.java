@@ -1,3 +1,6 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -17,6 +20,7 @@ public class Player implements Comparable<Player> {
 	public int amountBought;
 	public int simSize;
 	private Table simTable;
+	private static final PreflopTable preflopTable = PreflopTable.getDefault();
 	public int playerNumber;
 	public boolean isActive;
 	public int numHandsPlayed;
@@ -28,6 +32,37 @@ public class Player implements Comparable<Player> {
 	public boolean broke;
 	public int winnings;
 
+	/**
+	* Simulate after the flop only until the Kelly bet is clear, at most
+	* maxSimSize trials, instead of always simSize trials
+	*/
+	public boolean adaptive = true;
+	public int maxSimSize = 200;
+	public float kellyTolerance = 0.15f;
+
+	/**
+	* Trials of the last adaptive or river simulation, and of all of them;
+	* an exact count on the river is 0 trials
+	*/
+	public int lastTrials;
+	public long totalTrials;
+	public int numSimulated;
+
+	/**
+	* Win probabilities taken from the earlier round of the same street
+	* instead of simulated again
+	*/
+	public long savedSimulations;
+
+	// the board as the casino worked it out for the table, null to work it out here
+	private BoardContext board;
+
+	// equity of the last round, for the cards in memoKnown against memoNumIn players
+	private long memoKnown;
+	private int memoNumIn;
+	private float memoEquity;
+	private boolean memoSimulated;   // false if memoEquity was only looked up
+
 	public Player(int num) {
 		params = new PlayerParameters();
 		playerNumber = num;
@@ -97,10 +132,68 @@ public class Player implements Comparable<Player> {
 		params = pp;
 	}
 
+	/**
+	* Seed the random numbers of this player and its simulations,
+	* for reproducible runs.
+	*/
+	public void setSeed(long seed) {
+		r.setSeed(seed);
+		simTable.r.setSeed(r.nextLong());
+	}
+
+	/**
+	* Write what carries over from hand to hand: the counters, parameters and
+	* the state of the random numbers.  Used by Casino checkpoints, between
+	* hands only.
+	*/
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(playerNumber);
+		out.writeInt(bankroll);
+		out.writeInt(initialBankroll);
+		out.writeInt(amountBought);
+		out.writeInt(winnings);
+		out.writeInt(numHandsPlayed);
+		out.writeInt(simSize);
+		out.writeBoolean(broke);
+		float[] a = params.toArray();
+		for (int i=0; i<a.length; i++) out.writeFloat(a[i]);
+		Table.writeRandom(out, r);
+		simTable.writeState(out);
+	}
+
+	/**
+	* Read back what writeState() wrote, the player then goes on exactly
+	* as the one written would have.  Parameters are read into a new object.
+	*/
+	public void readState(DataInput in) throws IOException {
+		playerNumber = in.readInt();
+		bankroll = in.readInt();
+		initialBankroll = in.readInt();
+		amountBought = in.readInt();
+		winnings = in.readInt();
+		numHandsPlayed = in.readInt();
+		simSize = in.readInt();
+		broke = in.readBoolean();
+		float[] a = new float[PlayerParameters.NUM_PARAMS];
+		for (int i=0; i<a.length; i++) a[i] = in.readFloat();
+		params = new PlayerParameters();
+		params.fromArray(a);
+		r = Table.readRandom(in);
+		simTable.readState(in);
+	}
+
+	/**
+	* Look up / store flop simulations in this cache, null for none.
+	*/
+	public void setEquityCache(EquityCache cache) {
+		simTable.cache = cache;
+	}
+
 	public void givePocket(Card p1, Card p2) {
 	//	if (debug) o("given pocket: " + p1 + " " + p2);
 		pocket1 = p1;
 		pocket2 = p2;
+		memoKnown = 0;
 		numHandsPlayed++;
 	}
 
@@ -121,6 +214,118 @@ public class Player implements Comparable<Player> {
 		river = p1;
 	}
 
+	/**
+	* Share the board of the table with the other players there: the cards
+	* given from now on are the ones added to b, and the simulations take
+	* the board's setup and river ranks from it.  null to work it all out
+	* for this player alone.
+	*/
+	public void setBoard(BoardContext b) {
+		board = b;
+		simTable.setBoard(b);
+	}
+
+	// the board's rank table on the river, if the casino made one
+	private int[][] riverRanks() {
+		return (board != null) ? board.getRanks() : null;
+	}
+
+	/**
+	* Win probability before the flop: a lookup in the preflop table,
+	* or a simulation if there is no table for numIn opponents.
+	*/
+	private float preflop(int numIn) {
+		if (preflopLookup(numIn))
+			return preflopTable.getWinProbability(pocket1,pocket2,numIn);
+		return simTable.simulate(simSize,pocket1,pocket2);
+	}
+
+	private boolean preflopLookup(int numIn) {
+		return preflopTable != null && preflopTable.covers(numIn);
+	}
+
+	/**
+	* Win probability on the river from the board's rank table, with
+	* adaptive trials when there are too many opponents to count exactly.
+	*/
+	private float riverEquity(int numIn) {
+		int[][] riverRanks = riverRanks();
+		float s;
+		if (!adaptive) s = simTable.simulateRiver(simSize,-1,0,riverRanks,pocket1,pocket2,flop1,flop2,flop3,turn,river);
+		else s = simTable.simulateRiver(maxSimSize,1.0f/(numIn+1),kellyTolerance*numIn/(numIn+1),
+				riverRanks,pocket1,pocket2,flop1,flop2,flop3,turn,river);
+		countTrials();
+		return s;
+	}
+
+	/**
+	* Win probability after the flop, simulated until it is clear enough
+	* for the Kelly bet: break even is 1/(numIn+1), and the bet moves
+	* (numIn+1)/numIn times as much as the probability does, so the
+	* probability must be known to kellyTolerance*numIn/(numIn+1).
+	*/
+	private float adaptiveEquity(int round, int numIn) {
+		float threshold = 1.0f/(numIn+1);
+		float tolerance = kellyTolerance*numIn/(numIn+1);
+		float s;
+		if (round < 4) s = simTable.simulateAdaptive(simSize,maxSimSize,threshold,tolerance,pocket1,pocket2,flop1,flop2,flop3);
+		else if (round < 6) s = simTable.simulateAdaptive(simSize,maxSimSize,threshold,tolerance,pocket1,pocket2,flop1,flop2,flop3,turn);
+		else s = simTable.simulateAdaptive(simSize,maxSimSize,threshold,tolerance,pocket1,pocket2,flop1,flop2,flop3,turn,river);
+		countTrials();
+		return s;
+	}
+
+	// record the trials of the simulation just run by simTable
+	private void countTrials() {
+		lastTrials = simTable.lastTrials;
+		totalTrials += lastTrials;
+		numSimulated++;
+	}
+
+	/**
+	* Win probability with the cards known in this round against numIn
+	* players.  The bet and call rounds of a street see the same cards, so
+	* the estimate of the bet round is used again in the call round unless
+	* numIn changed in between; savedSimulations counts the reuses of
+	* estimates that were simulated, not looked up in the preflop table.
+	*/
+	private float equity(int round, int numIn) {
+		long known = knownMask(round);
+		if (known == memoKnown && numIn == memoNumIn) {
+			if (memoSimulated) {
+				savedSimulations++;
+				CasinoMetrics.savedSimulation();
+			}
+			return memoEquity;
+		}
+		float s = 0.0f;
+		if (round == 0)	 {s = preflop(numIn);}
+		if (round == 1)	 {s = preflop(numIn);}
+		if (round >= 6 && riverRanks() != null) {s = riverEquity(numIn);}
+		else if (adaptive && round >= 2) {s = adaptiveEquity(round,numIn);}
+		else if (round == 2)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3);}
+		else if (round == 3)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3);}
+		else if (round == 4)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3,turn);}
+		else if (round == 5)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3,turn);}
+		else if (round == 6)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3,turn,river);}
+		else if (round == 7)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3,turn,river);}
+
+		memoKnown = known;
+		memoNumIn = numIn;
+		memoEquity = s;
+		memoSimulated = round >= 2 || !preflopLookup(numIn);
+		return s;
+	}
+
+	// the pocket and the board cards out by this round
+	private long knownMask(int round) {
+		long m = CardMask.of(pocket1) | CardMask.of(pocket2);
+		if (round >= 2) m |= CardMask.of(flop1) | CardMask.of(flop2) | CardMask.of(flop3);
+		if (round >= 4) m |= CardMask.of(turn);
+		if (round >= 6) m |= CardMask.of(river);
+		return m;
+	}
+
 	/**
 	* Now encorporated into one method, getBet
 	*
@@ -132,17 +337,8 @@ public class Player implements Comparable<Player> {
 		boolean call=false;
 		if (round%2==1) call = true;
 		Bet bet = new Bet();
-		simTable.reset();
 		simTable.numPlayers = numIn;
-		float s = 0.0f;
-		if (round == 0)	 {s = simTable.simulate(simSize,pocket1,pocket2);}
-		if (round == 1)	 {s = simTable.simulate(simSize,pocket1,pocket2);}
-		if (round == 2)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3);}
-		if (round == 3)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3);}
-		if (round == 4)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3,turn);}
-		if (round == 5)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3,turn);}
-		if (round == 6)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3,turn,river);}
-		if (round == 7)	 {s = simTable.simulate(simSize,pocket1,pocket2,flop1,flop2,flop3,turn,river);}
+		float s = equity(round, numIn);
 
 		// that's all there is to it!
 		kellyBet = (s*numIn+s-1)/numIn;
@@ -188,14 +384,14 @@ public class Player implements Comparable<Player> {
 		//if (debug) o(" S calc: " + s + " k calc: " + kellyBet + "betAmount: " + betAmount);
 		bet.amount = (int)betAmount;
 
-		if (debug) {
+		if (Log.isDebug(debug)) {
 			//o("asked to bet round: " +round + " current bet: " + currentBet + " numIn: " + numIn);
 			o(pocket1 + " " + pocket2 + " " + flop1 + " " + flop2 + " " + flop3 + " "
 						+ turn + " " + river + " a_in:" + amountIn + " cb:" + currentBet + " calc: " + betAmount);
 		}
 
 		//  ***  cases for what to bet ***
-		if (currentBet < amountIn) System.out.println("********Something wrong, currentBet < amountIn******");
+		if (currentBet < amountIn) Log.warn("********Something wrong, currentBet < amountIn******");
 
 		// should we ever play when we are expected to lose?
 		else if (bet.amount < 0  &&  currentBet > amountIn) {
@@ -227,7 +423,7 @@ public class Player implements Comparable<Player> {
 		else if (!call) {
 
 			// only case left is make the bet as usual
-			else if (bet.amount>currentBet && round%2==0) {
+			if (bet.amount>currentBet && round%2==0) {
 				// this is an initial bet phase
 				// bet.amount >= currentBet
 				bankroll -= (bet.amount - amountIn);
@@ -242,9 +438,9 @@ public class Player implements Comparable<Player> {
 			amountIn = currentBet;
 		}
 
-		else {	o("****** ---  missing bet?");}
+		else {	Log.warn(playerNumber + ": ****** ---  missing bet?");}
 
-		if (debug) {
+		if (Log.isDebug(debug)) {
 			String ss = "";
 			if (bet.fold) ss+= "Folding: ";
 			if (bet.allIn) ss+="Going all in: ";
@@ -254,12 +450,13 @@ public class Player implements Comparable<Player> {
 		}
 
 
-		if (bet.amount<0) o("NEGATIVE BET");
+		if (bet.amount<0) Log.warn(playerNumber + ": NEGATIVE BET");
 		if (bankroll==0) broke=true;
+		CasinoMetrics.bet(round, bet);
 		return bet;
 	}
 
 	public void o(String s) {
-		System.out.println(playerNumber + ": " + s);
+		Log.debug(playerNumber + ": " + s);
 	}
 }
@@ -41,8 +41,83 @@ public class PlayerParameters {
 	public float rb_bluff_mean;
 	public float rb_bluff_sig;
 
+	/**
+	* number of parameters, in the order of toArray()
+	*/
+	public static final int NUM_PARAMS = 28;
+
 	public PlayerParameters () { }
 
+	/**
+	* All parameters, in declaration order
+	*/
+	public float[] toArray() {
+		float[] a = new float[NUM_PARAMS];
+		a[0] = pb_bet_mean;
+		a[1] = pb_bet_sig;
+		a[2] = pb_call_mean;
+		a[3] = pb_call_sig;
+		a[4] = fb_bet_mean;
+		a[5] = fb_bet_sig;
+		a[6] = fb_call_mean;
+		a[7] = fb_call_sig;
+		a[8] = tb_bet_mean;
+		a[9] = tb_bet_sig;
+		a[10] = tb_call_mean;
+		a[11] = tb_call_sig;
+		a[12] = rb_bet_mean;
+		a[13] = rb_bet_sig;
+		a[14] = rb_call_mean;
+		a[15] = rb_call_sig;
+		a[16] = pb_bluff;
+		a[17] = pb_bluff_mean;
+		a[18] = pb_bluff_sig;
+		a[19] = fb_bluff;
+		a[20] = fb_bluff_mean;
+		a[21] = fb_bluff_sig;
+		a[22] = tb_bluff;
+		a[23] = tb_bluff_mean;
+		a[24] = tb_bluff_sig;
+		a[25] = rb_bluff;
+		a[26] = rb_bluff_mean;
+		a[27] = rb_bluff_sig;
+		return a;
+	}
+
+	/**
+	* Set all parameters from an array made by toArray()
+	*/
+	public void fromArray(float[] a) {
+		pb_bet_mean = a[0];
+		pb_bet_sig = a[1];
+		pb_call_mean = a[2];
+		pb_call_sig = a[3];
+		fb_bet_mean = a[4];
+		fb_bet_sig = a[5];
+		fb_call_mean = a[6];
+		fb_call_sig = a[7];
+		tb_bet_mean = a[8];
+		tb_bet_sig = a[9];
+		tb_call_mean = a[10];
+		tb_call_sig = a[11];
+		rb_bet_mean = a[12];
+		rb_bet_sig = a[13];
+		rb_call_mean = a[14];
+		rb_call_sig = a[15];
+		pb_bluff = a[16];
+		pb_bluff_mean = a[17];
+		pb_bluff_sig = a[18];
+		fb_bluff = a[19];
+		fb_bluff_mean = a[20];
+		fb_bluff_sig = a[21];
+		tb_bluff = a[22];
+		tb_bluff_mean = a[23];
+		tb_bluff_sig = a[24];
+		rb_bluff = a[25];
+		rb_bluff_mean = a[26];
+		rb_bluff_sig = a[27];
+	}
+
 	public String getParamsLine() {
 		String tbr = "";
 		tbr += pb_bet_mean + "\t";
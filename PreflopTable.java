@@ -0,0 +1,213 @@
+import java.util.StringTokenizer;
+
+/**
+ * Win and tie probabilities before the flop for the 169 kinds of pocket
+ * (13 pairs, 78 suited and 78 offsuit hands) against 1 to 9 opponents.
+ *
+ * The table is generated offline by main(), running Table.simulateParallel
+ * with a large number of trials per entry, and saved as a text file.  It is
+ * loaded once with getDefault(), so a preflop decision is a lookup instead of
+ * a short, noisy simulation.  As in Table.simulate, the win probability
+ * counts a tie as a loss.
+ *
+ * File format: a "version" line, which must match VERSION, a "trials" and a
+ * "seed" line, then one line per pocket class in index order: the class name
+ * (AA, AKs, AKo, ...) followed by win and tie for 1..9 opponents.  Lines
+ * starting with # are comments.
+ */
+public class PreflopTable {
+
+	/** version of the file format and of the simulation behind it */
+	public static final int VERSION = 1;
+
+	public static final int NUM_CLASSES = Card.NUM_RANKS * Card.NUM_RANKS;
+	public static final int MAX_OPPONENTS = 9;
+
+	public static final String DEFAULT_FILE = "preflop_table.txt";
+
+	private static PreflopTable defaultTable;
+	private static boolean triedDefault = false;
+
+	private final float[][] win = new float[NUM_CLASSES][MAX_OPPONENTS + 1];
+	private final float[][] tie = new float[NUM_CLASSES][MAX_OPPONENTS + 1];
+	private int trials;
+	private long seed;
+
+	private PreflopTable() { }
+
+	/**
+	 * Get the table in DEFAULT_FILE, loaded on the first call.
+	 * @return the table, or null if there is no usable table file
+	 */
+	public static synchronized PreflopTable getDefault() {
+		if (!triedDefault) {
+			triedDefault = true;
+			defaultTable = load(DEFAULT_FILE);
+		}
+		return defaultTable;
+	}
+
+	/**
+	 * Class index {0..168} of a pocket.  The classes sit in a 13x13 grid:
+	 * pairs on the diagonal, suited hands at (high,low) and offsuit hands
+	 * at (low,high).
+	 * @param c1 card index of the first pocket card
+	 * @param c2 card index of the second pocket card
+	 */
+	public static int classOf(int c1, int c2) {
+		int r1 = Card.getRank(c1), r2 = Card.getRank(c2);
+		int hi = Math.max(r1,r2), lo = Math.min(r1,r2);
+		if (c1 / Card.NUM_RANKS == c2 / Card.NUM_RANKS) return hi*Card.NUM_RANKS + lo;
+		return lo*Card.NUM_RANKS + hi;
+	}
+
+	public static int classOf(Card c1, Card c2) {
+		return classOf(c1.getIndex(), c2.getIndex());
+	}
+
+	/**
+	 * Name of a class, for instance AA, AKs or T9o.
+	 */
+	public static String className(int cls) {
+		int a = cls / Card.NUM_RANKS, b = cls % Card.NUM_RANKS;
+		if (a == b) return "" + Card.getRankChar(a) + Card.getRankChar(b);
+		if (a > b) return "" + Card.getRankChar(a) + Card.getRankChar(b) + "s";
+		return "" + Card.getRankChar(b) + Card.getRankChar(a) + "o";
+	}
+
+	/**
+	 * Two card indexes of a pocket in the given class.
+	 */
+	public static int[] classCards(int cls) {
+		int a = cls / Card.NUM_RANKS, b = cls % Card.NUM_RANKS;
+		if (a > b) return new int[] {Card.toIndex(a,Card.CLUBS), Card.toIndex(b,Card.CLUBS)};
+		return new int[] {Card.toIndex(b,Card.CLUBS), Card.toIndex(a,Card.DIAMONDS)};
+	}
+
+	/**
+	 * True if the table has entries for this number of opponents.
+	 */
+	public boolean covers(int numOpponents) {
+		return numOpponents >= 1 && numOpponents <= MAX_OPPONENTS;
+	}
+
+	/**
+	 * Probability the pocket beats numOpponents random hands, ties count as losses.
+	 */
+	public float getWinProbability(Card p1, Card p2, int numOpponents) {
+		return win[classOf(p1,p2)][numOpponents];
+	}
+
+	/**
+	 * Probability the pocket ties for the best hand against numOpponents random hands.
+	 */
+	public float getTieProbability(Card p1, Card p2, int numOpponents) {
+		return tie[classOf(p1,p2)][numOpponents];
+	}
+
+	/**
+	 * Number of simulated trials behind each entry.
+	 */
+	public int getTrials() {
+		return trials;
+	}
+
+	/**
+	 * Simulate every entry of a new table.
+	 * @param trials number of trials per entry
+	 * @param seed seed of the simulations, entry i gets seed+i
+	 */
+	public static PreflopTable generate(int trials, long seed) {
+		PreflopTable pt = new PreflopTable();
+		pt.trials = trials;
+		pt.seed = seed;
+		Table t = new Table();
+		for (int cls=0; cls<NUM_CLASSES; cls++) {
+			int[] c = classCards(cls);
+			Card p1 = new Card(c[0]), p2 = new Card(c[1]);
+			for (int n=1; n<=MAX_OPPONENTS; n++) {
+				t.numPlayers = n;
+				t.simulateParallel(trials, seed + cls*MAX_OPPONENTS + n, p1, p2);
+				pt.win[cls][n] = (float)t.simWins/(float)trials;
+				pt.tie[cls][n] = (float)t.simTies/(float)trials;
+			}
+			Log.info(className(cls) + "\t" + pt.win[cls][1]);
+		}
+		return pt;
+	}
+
+	/**
+	 * Write the table to a file, see the class comment for the format.
+	 */
+	public void save(String fileName) {
+		StringBuffer s = new StringBuffer();
+		s.append("# preflop win/tie probabilities by pocket class for 1.."+MAX_OPPONENTS+" opponents\n");
+		s.append("version " + VERSION + "\n");
+		s.append("trials " + trials + "\n");
+		s.append("seed " + seed + "\n");
+		for (int cls=0; cls<NUM_CLASSES; cls++) {
+			s.append(className(cls));
+			for (int n=1; n<=MAX_OPPONENTS; n++)
+				s.append(" " + win[cls][n] + " " + tie[cls][n]);
+			s.append("\n");
+		}
+		file f = new file(fileName);
+		f.initWrite(false);
+		f.write(s.toString());
+		f.closeWrite();
+	}
+
+	/**
+	 * Read a table written by save().
+	 * @return the table, or null if the file is missing, of another version or broken
+	 */
+	public static PreflopTable load(String fileName) {
+		file f = new file(fileName);
+		if (!f.exists()) return null;
+		PreflopTable pt = new PreflopTable();
+		int cls = 0;
+		boolean versionOk = false;
+		f.initRead();
+		try {
+			String line;
+			while ((line = f.readLine()) != null) {
+				if (line.startsWith("#") || line.trim().length() == 0) continue;
+				StringTokenizer st = new StringTokenizer(line);
+				String key = st.nextToken();
+				if (key.equals("version")) versionOk = Integer.parseInt(st.nextToken()) == VERSION;
+				else if (key.equals("trials")) pt.trials = Integer.parseInt(st.nextToken());
+				else if (key.equals("seed")) pt.seed = Long.parseLong(st.nextToken());
+				else {
+					if (!versionOk || cls >= NUM_CLASSES || !key.equals(className(cls))) break;
+					for (int n=1; n<=MAX_OPPONENTS; n++) {
+						pt.win[cls][n] = Float.parseFloat(st.nextToken());
+						pt.tie[cls][n] = Float.parseFloat(st.nextToken());
+					}
+					cls++;
+				}
+			}
+		} catch (RuntimeException e) {
+			Log.error("PreflopTable: error reading " + fileName + " - " + e.toString());
+			cls = -1;
+		}
+		f.closeRead();
+		if (cls != NUM_CLASSES) {
+			Log.warn("PreflopTable: not using " + fileName + ": wrong version or incomplete");
+			return null;
+		}
+		return pt;
+	}
+
+	/**
+	 * Generate the default table.
+	 * args: [trials per entry] [seed]
+	 */
+	public static final void main(String[] args) {
+		int trials = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1L;
+		long start = System.currentTimeMillis();
+		PreflopTable pt = generate(trials, seed);
+		pt.save(DEFAULT_FILE);
+		Log.info("PreflopTable: wrote " + DEFAULT_FILE + " in " + (System.currentTimeMillis()-start)/1000 + " s");
+	}
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams result lines to a file.
+ *
+ * Text is encoded into one large buffer and goes to the file channel only
+ * when the buffer fills or on flush(), so a line costs an encode and a copy,
+ * not a file open.  Lines are only ever appended, the file is never read
+ * back or rewritten.  With a sync interval the data is also forced to disk
+ * on a flush when that much time has gone by since the last force, so a
+ * long run that is killed loses at most that much of its results.
+ *
+ * Safe to share between threads, each line is written whole.
+ */
+public class ResultsWriter {
+
+	public static final int DEFAULT_BUFFER = 1 << 16;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	private final String lineEnd = System.lineSeparator();
+	private final long syncMillis;
+	private long lastSync = System.currentTimeMillis();
+	private long bytesWritten = 0;
+
+	/**
+	 * Open a file for writing, no forced syncs.
+	 * @param append keep what is in the file and write after it, or start it empty
+	 */
+	public ResultsWriter(String fileName, boolean append) throws IOException {
+		this(fileName, append, DEFAULT_BUFFER, 0);
+	}
+
+	/**
+	 * @param bufferSize bytes held before a write to the file
+	 * @param syncMillis force the file to disk on a flush at most this often, 0 never
+	 */
+	public ResultsWriter(String fileName, boolean append, int bufferSize, long syncMillis) throws IOException {
+		if (append) channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		else channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.syncMillis = syncMillis;
+	}
+
+	/**
+	 * Write text as it is, no line separator is added.
+	 */
+	public synchronized void write(CharSequence s) throws IOException {
+		encode(CharBuffer.wrap(s));
+	}
+
+	/**
+	 * Write one line, the line separator is added.
+	 */
+	public synchronized void writeLine(CharSequence s) throws IOException {
+		encode(CharBuffer.wrap(s));
+		encode(CharBuffer.wrap(lineEnd));
+	}
+
+	/**
+	 * Write everything buffered to the file, and force it to disk if the
+	 * sync interval has passed.
+	 */
+	public synchronized void flush() throws IOException {
+		drain();
+		if (syncMillis > 0 && System.currentTimeMillis() - lastSync >= syncMillis) force();
+	}
+
+	/**
+	 * Write everything buffered and force it to disk now.
+	 */
+	public synchronized void sync() throws IOException {
+		drain();
+		force();
+	}
+
+	public synchronized void close() throws IOException {
+		drain();
+		if (syncMillis > 0) channel.force(false);
+		channel.close();
+	}
+
+	/**
+	 * Bytes written to the file so far, not counting what is still buffered.
+	 */
+	public synchronized long getBytesWritten() { return bytesWritten; }
+
+	private void encode(CharBuffer in) throws IOException {
+		while (true) {
+			CoderResult cr = encoder.encode(in, buffer, true);
+			if (cr.isOverflow()) drain();
+			else if (cr.isUnderflow()) break;
+			else cr.throwException();
+		}
+		encoder.reset();
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) bytesWritten += channel.write(buffer);
+		buffer.clear();
+	}
+
+	private void force() throws IOException {
+		channel.force(false);
+		lastSync = System.currentTimeMillis();
+	}
+}
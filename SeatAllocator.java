@@ -0,0 +1,129 @@
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ * Hands out seats from a pool of players.
+ *
+ * A player can sit at one table at a time and only if not broke.  The
+ * allocator keeps the eligible players at the front of an index array, so
+ * seating a table is a partial Fisher-Yates shuffle of that part: each seat
+ * swaps a random eligible player to the end of it.  Seating a table and
+ * releasing it again are O(tableSize) whatever the size of the pool.
+ *
+ * seat() marks the players active, release() inactive; a player which is
+ * broke when its table is released is not seated again.
+ * All methods are synchronized, so tables can be seated from any thread; a
+ * caller wanting reproducible tables must still seat them in a fixed order.
+ */
+public class SeatAllocator {
+
+	private final Player[] players;
+	private final IdentityHashMap<Player,Integer> ids;
+	private final Random r;
+
+	// index[0..numEligible) are the eligible players, where[id] is the position of player id in index
+	private final int[] index;
+	private final int[] where;
+	private final boolean[] seated;
+	private int numEligible;
+
+	/**
+	 * @param pool the players to seat, the array is copied
+	 * @param r random numbers used to pick players
+	 */
+	public SeatAllocator(Player[] pool, Random r) {
+		this.r = r;
+		players = pool.clone();
+		ids = new IdentityHashMap<Player,Integer>(2*players.length);
+		index = new int[players.length];
+		where = new int[players.length];
+		seated = new boolean[players.length];
+		for (int i=0; i<players.length; i++) {
+			ids.put(players[i], i);
+			index[i] = i;
+			where[i] = i;
+			if (!players[i].broke) add(i);
+		}
+	}
+
+	/**
+	 * Number of players which could be seated right now.
+	 */
+	public synchronized int numEligible() {
+		return numEligible;
+	}
+
+	/**
+	 * Pick tableSize different eligible players at random and mark them active.
+	 * @return the players in seating order, or null if there are not enough
+	 */
+	public synchronized Player[] seat(int tableSize) {
+		if (numEligible < tableSize) return null;
+		Player[] table = new Player[tableSize];
+		for (int j=0; j<tableSize; j++) {
+			int id = index[r.nextInt(numEligible)];
+			remove(id);
+			seated[id] = true;
+			table[j] = players[id];
+			table[j].isActive = true;
+		}
+		return table;
+	}
+
+	/**
+	 * Make the players of a table available again, unless they are broke.
+	 */
+	public synchronized void release(Player[] table) {
+		for (int j=0; j<table.length; j++) {
+			int id = ids.get(table[j]);
+			seated[id] = false;
+			table[j].isActive = false;
+			if (!table[j].broke) add(id);
+		}
+	}
+
+	/**
+	 * The players in the order seat() picks from, eligible ones first.
+	 * Together with the state of the random numbers this decides the
+	 * tables to come.
+	 */
+	public synchronized Player[] getOrder() {
+		Player[] order = new Player[players.length];
+		for (int i=0; i<players.length; i++) order[i] = players[index[i]];
+		return order;
+	}
+
+	/**
+	 * Put the players back in an order got from getOrder(), none may be seated.
+	 * @param order every player of the pool once
+	 * @param numEligible how many at the front of order are eligible
+	 */
+	public synchronized void setOrder(Player[] order, int numEligible) {
+		if (order.length != players.length) throw new IllegalArgumentException("order has " + order.length + " players, pool " + players.length);
+		for (int i=0; i<order.length; i++) {
+			int id = ids.get(order[i]);
+			if (seated[id]) throw new IllegalStateException("player " + order[i].playerNumber + " is seated");
+			index[i] = id;
+			where[id] = i;
+		}
+		this.numEligible = numEligible;
+	}
+
+	// move id to the end of the eligible part and shrink it
+	private void remove(int id) {
+		swap(where[id], --numEligible);
+	}
+
+	// move id just past the eligible part and grow it
+	private void add(int id) {
+		swap(where[id], numEligible++);
+	}
+
+	private void swap(int a, int b) {
+		int ia = index[a], ib = index[b];
+		index[a] = ib;
+		where[ib] = a;
+		index[b] = ia;
+		where[ia] = b;
+	}
+}
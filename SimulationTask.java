@@ -0,0 +1,103 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task running a block of Monte Carlo trials for Table.simulateParallel.
+ *
+ * The trials are cut into fixed size chunks, and every chunk gets its own
+ * random stream split off one seeded SplittableRandom in chunk order.  So
+ * which thread ends up running a chunk makes no difference, and the merged
+ * counts only depend on the seed and the number of trials.
+ *
+ * Result is {wins, ties, hands ranked}; a tie for the best hand is not
+ * counted as a win.
+ */
+public class SimulationTask extends RecursiveTask<long[]> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** trials per chunk */
+	public static final int CHUNK = 1024;
+
+	private final int[] known;
+	private final int numKnown;
+	private final int numOpponents;
+	private final int numTrials;
+	private final SplittableRandom[] streams;
+	private final int lo, hi;
+
+	/**
+	 * @param known pocket cards followed by the board cards dealt so far
+	 * @param numKnown number of cards in known (2, 5, 6 or 7)
+	 * @param numOpponents number of opponents to deal in
+	 * @param numTrials total number of trials
+	 * @param seed seed for the random streams
+	 */
+	public SimulationTask(int[] known, int numKnown, int numOpponents, int numTrials, long seed) {
+		this.known = known;
+		this.numKnown = numKnown;
+		this.numOpponents = numOpponents;
+		this.numTrials = numTrials;
+		int numChunks = (numTrials + CHUNK - 1) / CHUNK;
+		SplittableRandom root = new SplittableRandom(seed);
+		streams = new SplittableRandom[numChunks];
+		for (int i=0; i<numChunks; i++) streams[i] = root.split();
+		lo = 0;
+		hi = numChunks;
+	}
+
+	private SimulationTask(SimulationTask parent, int lo, int hi) {
+		known = parent.known;
+		numKnown = parent.numKnown;
+		numOpponents = parent.numOpponents;
+		numTrials = parent.numTrials;
+		streams = parent.streams;
+		this.lo = lo;
+		this.hi = hi;
+	}
+
+	protected long[] compute() {
+		if (hi - lo <= 1) {
+			long[] result = new long[3];
+			if (hi > lo) {
+				int trials = Math.min(CHUNK, numTrials - lo*CHUNK);
+				runTrials(trials, streams[lo], result);
+			}
+			return result;
+		}
+		int mid = (lo + hi) >>> 1;
+		SimulationTask left = new SimulationTask(this, lo, mid);
+		left.fork();
+		long[] result = new SimulationTask(this, mid, hi).compute();
+		long[] l = left.join();
+		result[0] += l[0];
+		result[1] += l[1];
+		result[2] += l[2];
+		return result;
+	}
+
+	private void runTrials(int trials, SplittableRandom rng, long[] result) {
+		IntDeck deck = new IntDeck(rng);
+		for (int i=0; i<numKnown; i++) deck.extractCard(known[i]);
+		int mark = deck.getTopCardIndex();
+
+		long pocket = CardMask.of(known[0]) | CardMask.of(known[1]);
+		long knownBoard = deck.getDeadMask() & ~pocket;
+
+		for (int t=0; t<trials; t++) {
+			long board = knownBoard;
+			for (int i=numKnown; i<7; i++) board |= CardMask.of(deck.deal());
+			int myRank = HandRankTable.rankMask(board | pocket);
+			int best = -1;
+			int i = 0;
+			for (; i<numOpponents && best <= myRank; i++) {
+				int rank = HandRankTable.rankMask(board | CardMask.of(deck.deal()) | CardMask.of(deck.deal()));
+				if (rank > best) best = rank;
+			}
+			result[2] += 1 + i;
+			if (myRank > best) result[0]++;
+			else if (myRank == best) result[1]++;
+			deck.restore(mark);
+		}
+	}
+}
@@ -1,4 +1,13 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
 * Lukas Saul 12/06
@@ -24,8 +33,78 @@ public class Table {
 	public int numPlayers;
 	public int numPlayersLeft;
 
+	/**
+	* Use exact enumeration instead of random trials after the flop,
+	* where EquityEnumerator says it is cheap enough
+	*/
+	public boolean exact = false;
+	private EquityEnumerator enumerator;
+
+	/**
+	* Spread the trials of simulate(..) over the fork/join pool,
+	* seeded from r so a seeded Table gives the same results every time
+	*/
+	public boolean parallel = false;
+	public ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	* Flop results are looked up in / stored to this cache if it is set,
+	* it may be shared by many tables
+	*/
+	public EquityCache cache;
+
+	/**
+	* trials between checks of simulateAdaptive(), and the trials its last call ran
+	*/
+	public static final int BATCH = 20;
+	public int lastTrials;
+
+	/**
+	* most opponents simulateRiver() counts exactly
+	*/
+	public static final int RIVER_EXACT = 2;
+
+	/**
+	* Run trials in batches, ranking their hands with HandRankTable.rankBatch()
+	* instead of one trial at a time, see batchTrials().  The trials deal
+	* in another order, so a seeded table gives other results.  Off by
+	* default: ranking is not what takes the time, dealing is, and batches
+	* came out slower than single trials.
+	*/
+	public boolean batched = false;
+
+	// card slots, keys and ranks of the hands of a batch, see HandRankTable.rankBatch()
+	private int[][] batchCards;
+	private long[] batchKeys;
+	private int[] batchRanks;
+	// per trial of a batch: board cards, rank of the known pocket; trials not lost yet
+	private int[][] batchBoards;
+	private int[] batchMine;
+	private int[] batchLeft;
+	// per trial of a batch: its own copy of the cards not known, the first batchDealt[t] of them dealt
+	private int[] batchRest;
+	private int[] batchDealt;
+	private int numRest;
+
+	/**
+	* Win and tie counts of the last parallel simulation
+	*/
+	public long simWins, simTies;
+
+	/**
+	* Int deck reused by every trial of simulate(..), holding everything
+	* but the known cards between trials
+	*/
+	private IntDeck simDeck;
+	private int numKnown = 0;
+	private long pocketMask, knownBoardMask;
+	private long pocketKey, knownBoardKey;   // HandRankTable keys, the board's with the suit counters
+	private final int[] knownCards = new int[7];
+	private BoardContext board;
+	private long evaluations;   // hands ranked by oneTrial() since the last countSimulation()
+
 	public Table() {
-		new Table(0);
+		this(0);
 		debug = false;
 	}
 
@@ -37,12 +116,25 @@ public class Table {
 		theDeck.shuffle();
 		theDeck.shuffle();
 		handEval = new HandEvaluator();
+		simDeck = new IntDeck(r);
 	}
 
+	/**
+	* Take the board of the simulations from this context, worked out once
+	* for the whole table, null to work it out here.  While it is set the
+	* board cards passed to a simulation must be the context's cards.
+	*/
+	public void setBoard(BoardContext b) {
+		board = b;
+	}
+
+	/**
+	* Put all cards back in theDeck and shuffle it.
+	* The evaluator and the decks are kept, nothing is allocated.
+	*/
 	public void reset() {
-		handEval = new HandEvaluator();
 		//System.out.println("called table.reset");
-		theDeck = new Deck();
+		theDeck.reset();
 		theDeck.shuffle();
 	}
 
@@ -112,12 +204,11 @@ public class Table {
 	*
 	*/
 	public float simulate(int num, Card p1, Card p2) {
-		if (debug) System.out.println("sim p called");
-		int numWins = 0;
-		for (int i=0; i<num; i++) {
-			reset();
-			if (oneHandResult(p1,p2)) numWins++;
-		}
+		if (Log.isDebug(debug)) Log.debug("sim p called");
+		if (parallel) return simulateParallel(num,r.nextLong(),p1,p2);
+		setKnown(p1,p2);
+		int numWins = trials(num);
+		countSimulation(num);
 		return (float)numWins/(float)num;
 	}
 
@@ -126,12 +217,24 @@ public class Table {
 	*
 	*/
 	public float simulate(int num, Card p1, Card p2, Card p3, Card p4, Card p5) {
-		if (debug) System.out.println("sim f called");
-		int numWins = 0;
-		for (int i=0; i<num; i++) {
-			reset();
-			if (oneHandResult(p1,p2,p3,p4,p5)) numWins++;
+		if (Log.isDebug(debug)) Log.debug("sim f called");
+		if (cache == null) return simulateFlop(num,p1,p2,p3,p4,p5);
+		long key = EquityCache.key(p1,p2,p3,p4,p5,numPlayers);
+		float s = cache.get(key,num);
+		if (s < 0) {
+			boolean enumerated = !parallel && exact && EquityEnumerator.isCheap(3,numPlayers);
+			s = simulateFlop(num,p1,p2,p3,p4,p5);
+			cache.put(key,enumerated ? Integer.MAX_VALUE : num,s);
 		}
+		return s;
+	}
+
+	private float simulateFlop(int num, Card p1, Card p2, Card p3, Card p4, Card p5) {
+		if (parallel) return simulateParallel(num,r.nextLong(),p1,p2,p3,p4,p5);
+		if (exact && EquityEnumerator.isCheap(3,numPlayers)) return enumerate(p1,p2,p3,p4,p5);
+		setKnown(p1,p2,p3,p4,p5);
+		int numWins = trials(num);
+		countSimulation(num);
 		return (float)numWins/(float)num;
 	}
 	/**
@@ -139,12 +242,12 @@ public class Table {
 	*
 	*/
 	public float simulate(int num, Card p1, Card p2, Card p3, Card p4, Card p5, Card p6) {
-		if (debug) System.out.println("sim t called");
-		int numWins = 0;
-		for (int i=0; i<num; i++) {
-			reset();
-			if (oneHandResult(p1,p2,p3,p4,p5,p6)) numWins++;
-		}
+		if (Log.isDebug(debug)) Log.debug("sim t called");
+		if (parallel) return simulateParallel(num,r.nextLong(),p1,p2,p3,p4,p5,p6);
+		if (exact && EquityEnumerator.isCheap(4,numPlayers)) return enumerate(p1,p2,p3,p4,p5,p6);
+		setKnown(p1,p2,p3,p4,p5,p6);
+		int numWins = trials(num);
+		countSimulation(num);
 		return (float)numWins/(float)num;
 	}
 	/**
@@ -152,13 +255,166 @@ public class Table {
 	*
 	*/
 	public float simulate(int num, Card p1, Card p2, Card p3, Card p4, Card p5, Card p6, Card p7) {
-		if (debug) System.out.println("sim r called");
+		if (Log.isDebug(debug)) Log.debug("sim r called");
+		if (parallel) return simulateParallel(num,r.nextLong(),p1,p2,p3,p4,p5,p6,p7);
+		if (exact && EquityEnumerator.isCheap(5,numPlayers)) return enumerate(p1,p2,p3,p4,p5,p6,p7);
+		setKnown(p1,p2,p3,p4,p5,p6,p7);
+		int numWins = trials(num);
+		countSimulation(num);
+		return (float)numWins/(float)num;
+	}
+
+	/**
+	*  Return probability of win, simulating only as many trials as it takes
+	*  to decide a Kelly bet.  Trials are run BATCH at a time; after each batch
+	*  a Wilson interval (z = 2) on the win probability is checked against the
+	*  break even probability threshold.  Simulation stops when the interval
+	*  is all below it, since a losing bet is a fold whatever its size; when
+	*  it is all above it and its half width is at most tolerance; or after
+	*  maxTrials, though one batch is always run.  The number of trials run
+	*  is left in lastTrials.
+	*
+	*  Exact and parallel tables do what simulate() does, with num trials
+	*  (lastTrials is 0 if the spot is enumerated).  With a cache, a flop
+	*  entry is only used as it is, and counted as a hit, if it decides the
+	*  bet for this threshold and tolerance; otherwise its trials are topped
+	*  up from here and the entry is stored again with all of them, unless
+	*  another table has stored one with more trials in the meantime.
+	*
+	*  @param known pocket cards followed by the board cards dealt so far
+	*/
+	public float simulateAdaptive(int num, int maxTrials, float threshold, float tolerance, Card... known) {
+		int boardKnown = known.length - 2;
+		if (parallel || (exact && EquityEnumerator.isCheap(boardKnown,numPlayers))) {
+			lastTrials = parallel ? num : 0;   // enumerating runs no trials
+			return simulate(num,known);
+		}
+		boolean cached = cache != null && boardKnown == 3;
+		long key = 0;
 		int numWins = 0;
-		for (int i=0; i<num; i++) {
-			reset();
-			if (oneHandResult(p1,p2,p3,p4,p5,p6,p7)) numWins++;
+		int n = 0;
+		if (cached) {
+			key = EquityCache.key(known[0],known[1],known[2],known[3],known[4],numPlayers);
+			EquityCache.Entry e = cache.peek(key);
+			if (e != null && e.trials >= BATCH) {
+				// an entry stopped early for another player's bet may not settle this one
+				int w = (int)Math.round((double)e.win*e.trials);
+				if (e.trials == Integer.MAX_VALUE || e.trials >= maxTrials || decided(w,e.trials,threshold,tolerance)) {
+					cache.countHit();
+					lastTrials = 0;
+					return e.win;
+				}
+				numWins = w;
+				n = e.trials;
+			}
+			cache.countMiss();
 		}
-		return (float)numWins/(float)num;
+		setKnown(known);
+		int run = 0;
+		do {
+			numWins += trials(BATCH);
+			n += BATCH;
+			run += BATCH;
+		} while (n < maxTrials && !decided(numWins,n,threshold,tolerance));
+		countSimulation(run);
+		lastTrials = run;
+		float s = (float)numWins/(float)n;
+		if (cached) cache.put(key,n,s);
+		return s;
+	}
+
+	/**
+	*  Return probability of win on the river from a table of ranks by
+	*  holding (HandEvaluator.getRanks() of the board).  Exact, by counting
+	*  opponent holdings, for up to RIVER_EXACT opponents; with more the
+	*  count takes milliseconds, so trials deal the opponents' holdings and
+	*  look their ranks up, no hand is ranked.  Trials stop early like in
+	*  simulateAdaptive(), at the latest after maxTrials but never before
+	*  one batch; a threshold below 0 runs them all.  A tie is a loss, lastTrials is 0 if exact.
+	*
+	*  @param known pocket cards followed by the five board cards
+	*/
+	public float simulateRiver(int maxTrials, float threshold, float tolerance, int[][] ranks, Card... known) {
+		int p1 = known[0].getIndex(), p2 = known[1].getIndex();
+		if (numPlayers <= RIVER_EXACT) {
+			long boardMask = 0;
+			if (board != null && board.size() == 5) boardMask = board.getMask();
+			else for (int i=2; i<7; i++) boardMask |= CardMask.of(known[i]);
+			if (enumerator == null) enumerator = new EquityEnumerator();
+			enumerator.enumerateRiver(p1,p2,boardMask,ranks,numPlayers);
+			lastTrials = 0;
+			return (float)enumerator.getWinProbability();
+		}
+		setKnown(known);
+		int myRank = ranks[p1][p2];
+		int numWins = 0;
+		int n = 0;
+		do {
+			for (int i=0; i<BATCH; i++) {
+				int mark = simDeck.getTopCardIndex();
+				boolean win = true;
+				for (int j=0; j<numPlayers && win; j++)
+					if (ranks[simDeck.deal()][simDeck.deal()] >= myRank) win = false;
+				simDeck.restore(mark);
+				if (win) numWins++;
+			}
+			n += BATCH;
+		} while (n < maxTrials && !(threshold >= 0 && decided(numWins,n,threshold,tolerance)));
+		countSimulation(n);
+		lastTrials = n;
+		return (float)numWins/(float)n;
+	}
+
+	// does the Wilson interval of wins/n settle which side of threshold we are on, and closely enough?
+	private static boolean decided(int wins, int n, float threshold, float tolerance) {
+		double p = (double)wins/n;
+		double z2 = 4.0;   // z = 2
+		double d = 1 + z2/n;
+		double center = (p + z2/(2*n)) / d;
+		double halfWidth = Math.sqrt(p*(1-p)/n + z2/(4.0*n*n)) * 2 / d;
+		if (center + halfWidth < threshold) return true;
+		return center - halfWidth > threshold && halfWidth <= tolerance;
+	}
+
+	// the fixed size simulation for the known cards
+	private float simulate(int num, Card[] known) {
+		switch (known.length) {
+			case 2: return simulate(num,known[0],known[1]);
+			case 5: return simulate(num,known[0],known[1],known[2],known[3],known[4]);
+			case 6: return simulate(num,known[0],known[1],known[2],known[3],known[4],known[5]);
+			case 7: return simulate(num,known[0],known[1],known[2],known[3],known[4],known[5],known[6]);
+		}
+		throw new IllegalArgumentException("can not simulate with " + known.length + " known cards");
+	}
+
+	/**
+	*  Return probability of win from /num simulations run on the fork/join pool.
+	*  Every worker deals from its own deck and random stream; the result
+	*  only depends on seed and num, not on the number of threads.
+	*
+	*  @param known pocket cards followed by the board cards dealt so far
+	*/
+	public float simulateParallel(int num, long seed, Card... known) {
+		int[] cards = new int[known.length];
+		for (int i=0; i<known.length; i++) cards[i] = known[i].getIndex();
+		long[] result = pool.invoke(new SimulationTask(cards,cards.length,numPlayers,num,seed));
+		simWins = result[0];
+		simTies = result[1];
+		evaluations += result[2];
+		countSimulation(num);
+		return (float)simWins/(float)num;
+	}
+
+	/**
+	*  Return exact probability of win against numPlayers opponents,
+	*  ties count as losses like in the simulations
+	*/
+	private float enumerate(Card p1, Card p2, Card... board) {
+		if (enumerator == null) enumerator = new EquityEnumerator();
+		int[] known = new int[board.length];
+		for (int i=0; i<board.length; i++) known[i] = board[i].getIndex();
+		enumerator.enumerate(p1.getIndex(),p2.getIndex(),known,known.length,numPlayers);
+		return (float)enumerator.getWinProbability();
 	}
 
 	/**
@@ -167,188 +423,203 @@ public class Table {
 	* Return true if this hand wins the table
 	*/
 	public boolean oneHandResult(Card p1, Card p2) {
-		if (debug) System.out.println("called OHR: " + p1 + " " + p2);
-		Hand pocket = new Hand();
-		//pocket.makeEmpty();
-		pocket.addCard(p1);
-		pocket.addCard(p2);
-		setPocket(p1,p2);
-		Hand[] hands = new Hand[numPlayers];
-		for (int i=0; i<numPlayers; i++) {
-			hands[i] = new Hand();
-			hands[i].addCard(theDeck.deal());
-			hands[i].addCard(theDeck.deal());
-		}
+		if (Log.isDebug(debug)) Log.debug("called OHR: " + p1 + " " + p2);
+		setKnown(p1,p2);
+		return oneTrial();
+	}
 
-		// flop
-		Card[] flop = getFlop();
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(flop[0]);
-			hands[i].addCard(flop[1]);
-			hands[i].addCard(flop[2]);
-		}
-		pocket.addCard(flop[0]);
-		pocket.addCard(flop[1]);
-		pocket.addCard(flop[2]);
-
-		// turn
-		Card next = getTurnOrRiver();
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(next);
-		}
-		pocket.addCard(next);
+	/**
+	* Write the state the next simulations depend on: the random numbers
+	* and the order of the simulation deck.
+	*/
+	public void writeState(DataOutput out) throws IOException {
+		writeRandom(out, r);
+		writeDeck(out, simDeck);
+	}
 
-		// river
-		next = getTurnOrRiver();
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(next);
-		}
-		pocket.addCard(next);
+	public void readState(DataInput in) throws IOException {
+		r = readRandom(in);
+		readDeck(in, simDeck);
+	}
 
-		// evaluate
-		//System.out.println("pocket.length: " + pocket.size());
-		if (handEval==null) System.out.println("null handEval..");
-		int myRank = handEval.rankHand(pocket);
-		for (int i=0; i<numPlayers; i++) {
-			// treat tie as loss
-			if (myRank <= handEval.rankHand(hands[i])) return false;
-		}
-		return true;
-	}
-
-	private boolean oneHandResult(Card c1, Card c2, Card c3, Card c4, Card c5) {
-		if (debug) System.out.println("called OHR: " + c1 + " " + c2 + " " + c3 + " " + c4+ " " + c5);
-		Hand pocket = new Hand();
-		pocket.addCard(c1);
-		pocket.addCard(c2);
-		setPocket(c1,c2);
-		setFlop(c3,c4,c5);
-		Hand[] hands = new Hand[numPlayers];
-		for (int i=0; i<numPlayers; i++) {
-			hands[i] = new Hand();
-			hands[i].addCard(theDeck.deal());
-			hands[i].addCard(theDeck.deal());
-		}
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(c3);
-			hands[i].addCard(c4);
-			hands[i].addCard(c5);
-		}
-		pocket.addCard(c3);
-		pocket.addCard(c4);
-		pocket.addCard(c5);
-
-		// turn
-		Card next = getTurnOrRiver();
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(next);
-		}
-		pocket.addCard(next);
+	/**
+	* java.util.Random does not give out its seed, but serializes it
+	* (with the spare gaussian), so that is how its state is saved.
+	*/
+	static void writeRandom(DataOutput out, Random rand) throws IOException {
+		ByteArrayOutputStream b = new ByteArrayOutputStream(128);
+		ObjectOutputStream o = new ObjectOutputStream(b);
+		o.writeObject(rand);
+		o.close();
+		out.writeShort(b.size());
+		out.write(b.toByteArray());
+	}
 
-		// river
-		next = getTurnOrRiver();
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(next);
+	static Random readRandom(DataInput in) throws IOException {
+		byte[] b = new byte[in.readUnsignedShort()];
+		in.readFully(b);
+		ObjectInputStream o = new ObjectInputStream(new ByteArrayInputStream(b));
+		try {
+			return (Random)o.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("bad random number state - " + e.toString());
 		}
-		pocket.addCard(next);
+	}
 
-		// evaluate
-		int myRank = handEval.rankHand(pocket);
-		for (int i=0; i<numPlayers; i++) {
-			// treat tie as loss
-			if (myRank <= handEval.rankHand(hands[i])) return false;
-		}
-		return true;
-	}
-
-	private boolean oneHandResult(Card c1, Card c2, Card c3, Card c4, Card c5, Card c6) {
-		if (debug) System.out.println("called OHR: " + c1 + " " + c2 + " " + c3 + " " + c4+ " " +c5+" "+c6);
-		Hand pocket = new Hand();
-		pocket.addCard(c1);
-		pocket.addCard(c2);
-		setPocket(c1,c2);
-		setFlop(c3,c4,c5);
-		setTurnOrRiver(c6);
-		Hand[] hands = new Hand[numPlayers];
-		for (int i=0; i<numPlayers; i++) {
-			hands[i] = new Hand();
-			hands[i].addCard(theDeck.deal());
-			hands[i].addCard(theDeck.deal());
-		}
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(c3);
-			hands[i].addCard(c4);
-			hands[i].addCard(c5);
-		}
-		pocket.addCard(c3);
-		pocket.addCard(c4);
-		pocket.addCard(c5);
+	/**
+	* The order of the cards, see IntDeck.setOrder()
+	*/
+	static void writeDeck(DataOutput out, IntDeck deck) throws IOException {
+		for (int i=0; i<IntDeck.NUM_CARDS; i++) out.writeByte(deck.getCard(i));
+	}
+
+	static void readDeck(DataInput in, IntDeck deck) throws IOException {
+		int[] order = new int[IntDeck.NUM_CARDS];
+		for (int i=0; i<order.length; i++) order[i] = in.readByte();
+		deck.setOrder(order);
+	}
 
-		// turn
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(c6);
+	// report a finished simulation to CasinoMetrics
+	private void countSimulation(int num) {
+		CasinoMetrics.simulation(num, evaluations);
+		evaluations = 0;
+	}
+
+	/**
+	* Take the given pocket and board cards out of the simulation deck,
+	* putting back the ones taken out for the last simulation first, and
+	* get the masks and keys of the pocket and the board, the board's from
+	* the BoardContext if there is one for these cards.
+	* O(number of known cards), no objects are created.
+	*/
+	private void setKnown(Card... cards) {
+		simDeck.setRandom(r);
+		simDeck.reset();
+		int p1 = cards[0].getIndex(), p2 = cards[1].getIndex();
+		knownCards[0] = p1;
+		knownCards[1] = p2;
+		simDeck.extractCard(p1);
+		simDeck.extractCard(p2);
+		pocketMask = CardMask.of(p1) | CardMask.of(p2);
+		pocketKey = HandRankTable.cardKey(p1) + HandRankTable.cardKey(p2);
+		numKnown = cards.length;
+		if (board != null && board.size() == numKnown - 2) {
+			for (int i=0; i<board.size(); i++) simDeck.extractCard(knownCards[i+2] = board.getCard(i));
+			knownBoardMask = board.getMask();
+			knownBoardKey = board.getKey();
+			return;
 		}
-		pocket.addCard(c6);
+		for (int i=2; i<numKnown; i++) simDeck.extractCard(knownCards[i] = cards[i].getIndex());
+		knownBoardMask = simDeck.getDeadMask() & ~pocketMask;
+		knownBoardKey = HandRankTable.key(knownBoardMask);
+	}
 
-		// river
-		Card next = getTurnOrRiver();
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(next);
+	// number of wins in num trials from the simulation deck
+	private int trials(int num) {
+		if (batched) return batchTrials(num);
+		int numWins = 0;
+		for (int i=0; i<num; i++) {
+			if (oneTrial()) numWins++;
 		}
-		pocket.addCard(next);
+		return numWins;
+	}
 
-		// evaluate
-		int myRank = handEval.rankHand(pocket);
-		for (int i=0; i<numPlayers; i++) {
-			// treat tie as loss
-			if (myRank <= handEval.rankHand(hands[i])) return false;
+	/**
+	* num trials in batches: deal every trial's board first and rank the
+	* known pocket with each in one HandRankTable.rankBatch() call, then
+	* play the opponents one at a time, dealing and ranking a pocket only
+	* in the trials the known pocket has not lost yet, all of them in one
+	* call.  Every trial deals from its own copy of the cards not known, a
+	* partial Fisher-Yates shuffle like IntDeck's, so its cards never
+	* collide and each card dealt takes one random number.  A tie is a loss.
+	*/
+	private int batchTrials(int num) {
+		numRest = simDeck.cardsLeft();
+		if (batchRanks == null || batchRanks.length < num) {
+			batchCards = new int[7][num];
+			batchKeys = new long[num];
+			batchRanks = new int[num];
+			batchBoards = new int[5][num];
+			batchMine = new int[num];
+			batchLeft = new int[num];
+			batchRest = new int[num*IntDeck.NUM_CARDS];
+			batchDealt = new int[num];
 		}
-		return true;
-	}
-
-	private boolean oneHandResult(Card c1, Card c2, Card c3, Card c4, Card c5, Card c6, Card c7) {
-		if (debug) System.out.println("called OHR: " + c1 + " " + c2 + " " + c3 + " " + c4+ " " +c5+" "+c6+" "+c7);
-		Hand pocket = new Hand();
-		pocket.addCard(c1);
-		pocket.addCard(c2);
-		setPocket(c1,c2);
-		setFlop(c3,c4,c5);
-		setTurnOrRiver(c6);
-		setTurnOrRiver(c7);
-		Hand[] hands = new Hand[numPlayers];
-		for (int i=0; i<numPlayers; i++) {
-			hands[i] = new Hand();
-			hands[i].addCard(theDeck.deal());
-			hands[i].addCard(theDeck.deal());
+		int top = simDeck.getTopCardIndex();
+		for (int i=0; i<numRest; i++) batchRest[i] = simDeck.getCard(top + i);
+		int numBoard = numKnown - 2;
+		for (int t=0; t<num; t++) {
+			if (t > 0) System.arraycopy(batchRest, 0, batchRest, t*numRest, numRest);
+			batchDealt[t] = 0;
+			for (int s=0; s<5; s++)
+				batchCards[s][t] = batchBoards[s][t] = (s < numBoard) ? knownCards[s+2] : dealRest(t);
+			batchLeft[t] = t;
 		}
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(c3);
-			hands[i].addCard(c4);
-			hands[i].addCard(c5);
+		Arrays.fill(batchCards[5], 0, num, knownCards[0]);
+		Arrays.fill(batchCards[6], 0, num, knownCards[1]);
+		HandRankTable.rankBatch(batchCards, num, batchKeys, batchMine);
+		evaluations += num;
+
+		int numLeft = num;
+		for (int j=0; j<numPlayers && numLeft > 0; j++) {
+			for (int k=0; k<numLeft; k++) {
+				int t = batchLeft[k];
+				for (int s=0; s<5; s++) batchCards[s][k] = batchBoards[s][t];
+				batchCards[5][k] = dealRest(t);
+				batchCards[6][k] = dealRest(t);
+			}
+			HandRankTable.rankBatch(batchCards, numLeft, batchKeys, batchRanks);
+			evaluations += numLeft;
+			int n = 0;
+			for (int k=0; k<numLeft; k++) {
+				int t = batchLeft[k];
+				if (batchRanks[k] < batchMine[t]) batchLeft[n++] = t;
+			}
+			numLeft = n;
 		}
-		pocket.addCard(c3);
-		pocket.addCard(c4);
-		pocket.addCard(c5);
+		return numLeft;
+	}
 
-		// turn
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(c6);
-		}
-		pocket.addCard(c6);
+	// deal a random card from trial t's copy of the cards not known
+	private int dealRest(int t) {
+		int base = t*numRest;
+		int d = batchDealt[t]++;
+		int i = base + d + r.nextInt(numRest - d);
+		int c = batchRest[i];
+		batchRest[i] = batchRest[base + d];
+		batchRest[base + d] = c;
+		return c;
+	}
 
-		// river
-		for (int i=0; i<numPlayers; i++) {
-			hands[i].addCard(c7);
+	/**
+	* One trial from the simulation deck: deal the rest of the board and
+	* the numPlayers pockets, then put them back.  The board's key is
+	* built on the known board's, so a hand is ranked from two card keys.
+	*
+	* Return true if the known pocket wins the table, a tie is a loss
+	*/
+	private boolean oneTrial() {
+		int mark = simDeck.getTopCardIndex();
+		long boardMask = knownBoardMask;
+		long boardKey = knownBoardKey;
+		for (int i=numKnown; i<7; i++) {
+			int c = simDeck.deal();
+			boardMask |= CardMask.of(c);
+			boardKey += HandRankTable.cardKey(c);
 		}
-		pocket.addCard(c7);
 
-		// evaluate
-		int myRank = handEval.rankHand(pocket);
-		for (int i=0; i<numPlayers; i++) {
+		int myRank = HandRankTable.rankKey7(boardKey + pocketKey, boardMask | pocketMask);
+		boolean win = true;
+		int i = 0;
+		for (; i<numPlayers && win; i++) {
 			// treat tie as loss
-			if (myRank <= handEval.rankHand(hands[i])) return false;
+			int a = simDeck.deal(), b = simDeck.deal();
+			long key = boardKey + HandRankTable.cardKey(a) + HandRankTable.cardKey(b);
+			if (myRank <= HandRankTable.rankKey7(key, boardMask | CardMask.of(a) | CardMask.of(b))) win = false;
 		}
-		return true;
+		evaluations += 1 + i;
+		simDeck.restore(mark);
+		return win;
 	}
 
 	public static final void main(String[] args) {
@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many Casino configurations in one JVM.
+ *
+ * Every configuration is a seeded, single threaded Casino played on a
+ * fixed size thread pool, so the JIT warmup and the evaluator and preflop
+ * tables (static, read only) are paid for once for the whole sweep.  The
+ * final standings of each run are appended to one results file as soon as
+ * the run is done (and forced to disk at most every 10 s), one line per
+ * player:
+ *
+ *   config  seed  numPlayers  annie  numRounds  playerNumber  perHand  params..
+ */
+public class Tournament {
+
+	/**
+	 * One Casino setup of the sweep.
+	 */
+	public static class Config {
+		public String name;
+		public long seed;
+		public int numPlayers = 20;
+		public int annie = 50;
+		public int numRounds = 1000;
+		public int numTables = 1;
+		/** parameters handed out to the pool in turn */
+		public PlayerParameters[] mix;
+
+		public Config(String name, long seed, PlayerParameters... mix) {
+			this.name = name;
+			this.seed = seed;
+			this.mix = mix;
+		}
+	}
+
+	private final List<Config> configs = new ArrayList<Config>();
+	private final ResultsWriter results;
+	private int numDone = 0;
+
+	/**
+	 * @param resultsFile file the standings are written to, overwritten
+	 */
+	public Tournament(String resultsFile) throws IOException {
+		results = new ResultsWriter(resultsFile, false, ResultsWriter.DEFAULT_BUFFER, 10000);
+		results.write("config\tseed\tnumPlayers\tannie\tnumRounds\tplayerNumber\tperHand\tparams\n");
+		results.flush();
+	}
+
+	public void add(Config c) {
+		configs.add(c);
+	}
+
+	/**
+	 * Play all configurations added so far, numThreads at a time.
+	 * Returns when all are done.
+	 */
+	public void run(int numThreads) {
+		ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+		for (int i=0; i<configs.size(); i++) {
+			final Config c = configs.get(i);
+			exec.execute(new Runnable() {
+				public void run() {
+					try {
+						report(c, play(c));
+					} catch (RuntimeException e) {
+						Log.error("Tournament: config " + c.name + " failed - " + e.toString());
+					}
+				}
+			});
+		}
+		exec.shutdown();
+		try {
+			exec.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			exec.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Write out and close the results file.
+	 */
+	public void close() throws IOException {
+		results.close();
+	}
+
+	/**
+	 * Play one configuration.
+	 * @return the pool, best player first
+	 */
+	public static Player[] play(Config c) {
+		Casino casino = new Casino(c.seed, c.numPlayers, c.numTables, 1);
+		casino.annie = c.annie;
+		casino.numRounds = c.numRounds;
+		casino.logFile = null;
+		casino.progress = false;
+		if (c.mix != null && c.mix.length > 0) casino.setParams(c.mix);
+		casino.run();
+		Player[] standings = casino.pool.clone();
+		Arrays.sort(standings);
+		for (int i=0; i<standings.length/2; i++) {
+			Player t = standings[i];
+			standings[i] = standings[standings.length-1-i];
+			standings[standings.length-1-i] = t;
+		}
+		return standings;
+	}
+
+	// append the standings of one run to the results file
+	private synchronized void report(Config c, Player[] standings) {
+		StringBuffer s = new StringBuffer();
+		String prefix = c.name + "\t" + c.seed + "\t" + c.numPlayers + "\t" + c.annie + "\t" + c.numRounds + "\t";
+		for (int i=0; i<standings.length; i++)
+			s.append(prefix + standings[i].playerNumber + "\t" + standings[i].getPerHandRatio() + "\t"
+					+ standings[i].params.getParamsLine() + "\n");
+		try {
+			results.write(s);
+			results.flush();
+		} catch (IOException e) {
+			Log.error("Tournament: error writing results of " + c.name + " - " + e.toString());
+		}
+		numDone++;
+		Log.info("Tournament: " + c.name + " done (" + numDone + "/" + configs.size() + ")");
+	}
+
+	/**
+	 * Sweep pool size, ante and a few parameter mixes.
+	 * args: [numRounds] [numThreads] [results file]
+	 */
+	public static final void main(String[] args) throws IOException {
+		int numRounds = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+		int numThreads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		String fileName = (args.length > 2) ? args[2] : "tournament_results.txt";
+
+		float[][] mixes = { {0.5f, 1, 2, 4, 8}, {1, 2}, {0.5f, 1}, {2, 4, 8} };
+		int[] sizes = {10, 20, 40};
+		int[] antes = {25, 50, 100};
+
+		Tournament t = new Tournament(fileName);
+		long seed = 1;
+		for (int m=0; m<mixes.length; m++) {
+			PlayerParameters[] mix = new PlayerParameters[mixes[m].length];
+			for (int i=0; i<mix.length; i++) {
+				mix[i] = new PlayerParameters();
+				mix[i].setConst(mixes[m][i]);
+			}
+			for (int s=0; s<sizes.length; s++) {
+				for (int a=0; a<antes.length; a++) {
+					Config c = new Config("m" + m + "_n" + sizes[s] + "_a" + antes[a], seed++, mix);
+					c.numPlayers = sizes[s];
+					c.annie = antes[a];
+					c.numRounds = numRounds;
+					t.add(c);
+				}
+			}
+		}
+		long start = System.currentTimeMillis();
+		t.run(numThreads);
+		t.close();
+		Log.info("Tournament: " + t.configs.size() + " configs in " + (System.currentTimeMillis()-start)/1000 + " s");
+	}
+}
@@ -361,6 +361,10 @@ public class file {
 	public synchronized void addLines(int firstLineGoesHere, String[] lines) {
 		// we still have line coherence, we know how many we are adding
 		checkFrozen();
+		if (lineNumberCoherence && firstLineGoesHere == numLines+1) { // right after the last line
+			appendLines(lines);
+			return;
+		}
 		//System.out.println("starting file.addLInes- first line:" + lines[0]);
 		int numNewLines = lines.length;
 		int currentLine=1; //this is the syntax. First line = line 1 NOT line 0
@@ -425,6 +429,41 @@ public class file {
 		}
 	}
 
+	// adds lines at the end of the file without reading or rewriting it,
+	// use this instead of addLines for log and results files
+	public synchronized void appendLines(String[] lines) {
+		checkFrozen();
+		try {
+			test = new File(fileName);
+			boolean needSeparator = false;
+			if (test.length() > 0) { // start a new line unless the file ends with one
+				RandomAccessFile raf = new RandomAccessFile(test, "r");
+				raf.seek(test.length()-1);
+				int last = raf.read();
+				raf.close();
+				needSeparator = (last != '\n' && last != '\r');
+			}
+			fos = new FileOutputStream(fileName, true);
+			osw = new OutputStreamWriter(fos, encoding);
+			bw = new BufferedWriter(osw);
+			String sep = System.getProperty("line.separator");
+			if (needSeparator) bw.write(sep);
+			for (int i=0; i<lines.length; i++) bw.write(lines[i] + sep);
+			bw.close();
+			osw.close();
+			fos.close();
+			numLines += lines.length;
+		}catch (IOException e) {
+			System.out.println("Error b- " + e.toString());
+		}catch (SecurityException b) {
+			System.out.println("Go check security stuff");
+		}
+	}
+
+	public synchronized void appendStuffLn(String line) {
+		appendLines(new String[] {line});
+	}
+
 	public synchronized void addText(int firstLineGoesHere, String text) {
 		checkFrozen();
 		lineNumberCoherence = false;